@@ -0,0 +1,133 @@
+package cse340.menus.aggregator;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Task duration statistics for each condition (menu type + task type) seen in the result
+ * files. Conditions are keyed by the raw bytes of the menu and task columns, so looking one
+ * up while parsing does not create any Strings. Tables built from different parts of the
+ * input are combined with merge, using Chan et al.'s formula for the variance.
+ */
+class ConditionTable {
+
+    /** Number of slots in the table. There are only a handful of conditions. */
+    private static final int CAPACITY = 64;
+
+    /** The key of each slot (menu bytes, a ',' then task bytes), or null if empty */
+    private final byte[][] mKeys = new byte[CAPACITY][];
+
+    /** Per slot statistics */
+    private final long[] mCounts = new long[CAPACITY];
+    private final long[] mErrors = new long[CAPACITY];
+    private final double[] mMeans = new double[CAPACITY];
+    private final double[] mM2s = new double[CAPACITY];
+
+    /**
+     * Add one trial.
+     *
+     * @param buf Holds the key (the menu column, the ',' after it and the task column)
+     * @param keyStart Where the key starts in buf
+     * @param keyEnd Where the key ends in buf (exclusive)
+     * @param durationMillis How long the trial took
+     * @param error Whether the wrong item was selected
+     */
+    void add(byte[] buf, int keyStart, int keyEnd, long durationMillis, boolean error) {
+        int slot = slot(buf, keyStart, keyEnd);
+        if (mKeys[slot] == null) {
+            mKeys[slot] = Arrays.copyOfRange(buf, keyStart, keyEnd);
+        }
+        long count = ++mCounts[slot];
+        if (error) {
+            mErrors[slot]++;
+        }
+        double delta = durationMillis - mMeans[slot];
+        mMeans[slot] += delta / count;
+        mM2s[slot] += delta * (durationMillis - mMeans[slot]);
+    }
+
+    /**
+     * Add every condition of another table into this one.
+     *
+     * @param other The table to merge in
+     * @return this table
+     */
+    ConditionTable merge(ConditionTable other) {
+        for (int i = 0; i < CAPACITY; i++) {
+            if (other.mKeys[i] == null) {
+                continue;
+            }
+            byte[] key = other.mKeys[i];
+            int slot = slot(key, 0, key.length);
+            if (mKeys[slot] == null) {
+                mKeys[slot] = key;
+            }
+            long count = mCounts[slot] + other.mCounts[i];
+            double delta = other.mMeans[i] - mMeans[slot];
+            mMeans[slot] += delta * other.mCounts[i] / count;
+            mM2s[slot] += other.mM2s[i]
+                    + delta * delta * mCounts[slot] * other.mCounts[i] / count;
+            mCounts[slot] = count;
+            mErrors[slot] += other.mErrors[i];
+        }
+        return this;
+    }
+
+    // Finds the slot holding a key, or the empty slot where it should go
+    private int slot(byte[] buf, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + buf[i];
+        }
+        int slot = (hash ^ (hash >>> 16)) & (CAPACITY - 1);
+        for (int probes = 0; probes < CAPACITY; probes++) {
+            byte[] key = mKeys[slot];
+            if (key == null || equals(key, buf, start, end)) {
+                return slot;
+            }
+            slot = (slot + 1) & (CAPACITY - 1);
+        }
+        throw new IllegalStateException("too many conditions");
+    }
+
+    private static boolean equals(byte[] key, byte[] buf, int start, int end) {
+        if (key.length != end - start) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (key[i] != buf[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Formats the table as CSV, one condition per line, sorted by condition.
+     *
+     * @return The CSV, including a header line
+     */
+    String toCSV() {
+        String[] lines = new String[CAPACITY];
+        int n = 0;
+        for (int i = 0; i < CAPACITY; i++) {
+            if (mKeys[i] == null) {
+                continue;
+            }
+            double variance = mCounts[i] > 1 ? mM2s[i] / (mCounts[i] - 1) : 0;
+            lines[n++] = String.format(Locale.US, "%s,%d,%.1f,%.1f,%d,%.4f",
+                    new String(mKeys[i], StandardCharsets.US_ASCII),
+                    mCounts[i], mMeans[i], Math.sqrt(variance), mErrors[i],
+                    (double) mErrors[i] / mCounts[i]);
+        }
+        Arrays.sort(lines, 0, n);
+
+        StringBuilder s = new StringBuilder(
+                "menu,task,trials,mean duration (millis),sd duration (millis),errors,error rate\n");
+        for (int i = 0; i < n; i++) {
+            s.append(lines[i]).append('\n');
+        }
+        return s.toString();
+    }
+}
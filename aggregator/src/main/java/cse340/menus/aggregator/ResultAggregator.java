@@ -0,0 +1,268 @@
+package cse340.menus.aggregator;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Merges the TestResult.csv files pulled from many devices into per-condition statistics.
+ *
+ * Every file is split into chunks that are memory mapped and parsed in parallel on a
+ * fork-join pool. Rows are parsed straight from the mapped bytes, so no Strings are created
+ * per row or per field. The columns are the ones written by ExperimentSession.createCSV and
+ * ExperimentTrial.toString in the app:
+ *
+ *   participant, trialNum, repeatNum, menu, task, startTime, taskDuration (millis),
+ *   Start x, Start y, End x, End y, selected option, prompted option, ...
+ *
+ * Only the leading columns are read, so columns added to the end of the row don't matter.
+ *
+ * Usage: ResultAggregator file-or-directory...
+ * Directories are searched for .csv files, except the ones of an exported archive that hold
+ * no result rows or repeat them (see SKIPPED_FILES). The statistics are printed as CSV.
+ */
+public class ResultAggregator {
+
+    /** Column positions in a result row */
+    private static final int MENU_COLUMN = 3;
+    private static final int TASK_COLUMN = 4;
+    private static final int DURATION_COLUMN = 6;
+    private static final int SELECTED_COLUMN = 11;
+    private static final int PROMPTED_COLUMN = 12;
+
+    /** How much of a file a single task parses */
+    private static final long CHUNK_SIZE = 32L << 20;
+
+    /** How far past the end of its chunk a task may need to read to finish its last row */
+    private static final long MAX_ROW_LENGTH = 8L << 20;
+
+    /**
+     * Files that aren't results: an archive's manifest and a session's shard index, and the
+     * trials.csv of earlier exports, which repeated the trials in the shards
+     */
+    private static final Set<String> SKIPPED_FILES = new HashSet<>(
+            Arrays.asList("manifest.csv", "index.csv", "trials.csv"));
+
+    /** Marker for a column that could not be parsed as a number */
+    private static final long NOT_A_NUMBER = Long.MIN_VALUE;
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: ResultAggregator file-or-directory...");
+            System.exit(1);
+        }
+
+        long start = System.nanoTime();
+        List<Path> files = findFiles(args);
+        List<Chunk> chunks = new ArrayList<>();
+        List<FileChannel> channels = new ArrayList<>();
+        long bytes = 0;
+        try {
+            for (Path file : files) {
+                FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+                channels.add(channel);
+                long size = channel.size();
+                for (long offset = 0; offset < size; offset += CHUNK_SIZE) {
+                    chunks.add(new Chunk(channel, size, offset, Math.min(size, offset + CHUNK_SIZE)));
+                }
+                bytes += size;
+            }
+
+            ConditionTable table = ForkJoinPool.commonPool()
+                    .invoke(new AggregateTask(chunks, 0, chunks.size()));
+            System.out.print(table.toCSV());
+        } finally {
+            for (FileChannel channel : channels) {
+                channel.close();
+            }
+        }
+
+        System.err.printf("Aggregated %d files (%d bytes) in %d ms%n", files.size(), bytes,
+                (System.nanoTime() - start) / 1000000);
+    }
+
+    // Expands directories into the .csv files they contain
+    private static List<Path> findFiles(String[] args) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (String arg : args) {
+            Path path = Paths.get(arg);
+            if (Files.isDirectory(path)) {
+                try (Stream<Path> walk = Files.walk(path)) {
+                    files.addAll(walk.filter(Files::isRegularFile)
+                            .filter(p -> p.toString().endsWith(".csv"))
+                            .filter(p -> !SKIPPED_FILES.contains(p.getFileName().toString()))
+                            .collect(Collectors.toList()));
+                }
+            } else {
+                files.add(path);
+            }
+        }
+        return files;
+    }
+
+    /** A byte range of one file. The rows that start inside the range belong to it. */
+    private static class Chunk {
+        final FileChannel channel;
+        final long fileSize, start, end;
+
+        Chunk(FileChannel channel, long fileSize, long start, long end) {
+            this.channel = channel;
+            this.fileSize = fileSize;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /** Parses a range of chunks, splitting it in half until only one chunk is left */
+    private static class AggregateTask extends RecursiveTask<ConditionTable> {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> mChunks;
+        private final int mFrom, mTo;
+
+        AggregateTask(List<Chunk> chunks, int from, int to) {
+            mChunks = chunks;
+            mFrom = from;
+            mTo = to;
+        }
+
+        @Override
+        protected ConditionTable compute() {
+            if (mTo - mFrom <= 1) {
+                ConditionTable table = new ConditionTable();
+                if (mTo > mFrom) {
+                    parse(mChunks.get(mFrom), table);
+                }
+                return table;
+            }
+            int mid = (mFrom + mTo) >>> 1;
+            AggregateTask left = new AggregateTask(mChunks, mFrom, mid);
+            left.fork();
+            ConditionTable right = new AggregateTask(mChunks, mid, mTo).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    // Parses every row starting inside the chunk
+    private static void parse(Chunk chunk, ConditionTable table) {
+        MappedByteBuffer buf;
+        long mapStart = Math.max(0, chunk.start - 1);
+        long mapEnd = Math.min(chunk.fileSize, chunk.end + MAX_ROW_LENGTH);
+        try {
+            buf = chunk.channel.map(FileChannel.MapMode.READ_ONLY, mapStart, mapEnd - mapStart);
+        } catch (IOException e) {
+            throw new IllegalStateException("Couldn't map result file", e);
+        }
+
+        int pos = (int) (chunk.start - mapStart);
+        int limit = (int) (chunk.end - mapStart);
+
+        // The row that started in the previous chunk belongs to that chunk
+        if (chunk.start > 0 && buf.get(pos - 1) != '\n') {
+            pos = nextRow(buf, pos);
+        }
+
+        RowParser parser = new RowParser();
+        while (pos < limit) {
+            int next = nextRow(buf, pos);
+            if (next > buf.limit() && mapEnd < chunk.fileSize) {
+                throw new IllegalStateException("Row longer than " + MAX_ROW_LENGTH + " bytes");
+            }
+            parser.parse(buf, pos, Math.min(next, buf.limit()), table);
+            pos = next;
+        }
+    }
+
+    // Finds the start of the row after the one containing pos
+    private static int nextRow(MappedByteBuffer buf, int pos) {
+        int limit = buf.limit();
+        while (pos < limit && buf.get(pos) != '\n') {
+            pos++;
+        }
+        return pos + 1;
+    }
+
+    /** Reads the columns of one row that the statistics need */
+    private static class RowParser {
+        /** Holds the menu and task columns so they can be used as a key */
+        private byte[] mKey = new byte[64];
+
+        void parse(MappedByteBuffer buf, int start, int end, ConditionTable table) {
+            int menuStart = -1, taskEnd = -1;
+            long duration = NOT_A_NUMBER, selected = NOT_A_NUMBER, prompted = NOT_A_NUMBER;
+
+            int column = 0;
+            int fieldStart = start;
+            for (int i = start; i <= end && column <= PROMPTED_COLUMN; i++) {
+                byte b = i < end ? buf.get(i) : (byte) '\n';
+                if (b != ',' && b != '\n' && b != '\r') {
+                    continue;
+                }
+                switch (column) {
+                    case 0:
+                        // The header and anything else that isn't a trial is skipped
+                        if (parseLong(buf, fieldStart, i) == NOT_A_NUMBER) {
+                            return;
+                        }
+                        break;
+                    case MENU_COLUMN: menuStart = fieldStart; break;
+                    case TASK_COLUMN: taskEnd = i; break;
+                    case DURATION_COLUMN: duration = parseLong(buf, fieldStart, i); break;
+                    case SELECTED_COLUMN: selected = parseLong(buf, fieldStart, i); break;
+                    case PROMPTED_COLUMN: prompted = parseLong(buf, fieldStart, i); break;
+                    default: break;
+                }
+                column++;
+                fieldStart = i + 1;
+                if (b != ',') {
+                    break;
+                }
+            }
+
+            if (column <= PROMPTED_COLUMN || duration == NOT_A_NUMBER
+                    || selected == NOT_A_NUMBER || prompted == NOT_A_NUMBER) {
+                return;
+            }
+
+            int keyLength = taskEnd - menuStart;
+            if (keyLength > mKey.length) {
+                mKey = new byte[keyLength];
+            }
+            for (int i = 0; i < keyLength; i++) {
+                mKey[i] = buf.get(menuStart + i);
+            }
+            table.add(mKey, 0, keyLength, duration, selected != prompted);
+        }
+
+        // Parses a (possibly negative) integer, or returns NOT_A_NUMBER
+        private static long parseLong(MappedByteBuffer buf, int start, int end) {
+            boolean negative = start < end && buf.get(start) == '-';
+            int i = negative ? start + 1 : start;
+            if (i >= end) {
+                return NOT_A_NUMBER;
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = buf.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return NOT_A_NUMBER;
+                }
+                value = 10 * value + digit;
+            }
+            return negative ? -value : value;
+        }
+    }
+}
@@ -1,31 +1,54 @@
 package cse340.menus;
 
 import android.annotation.SuppressLint;
+import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
+import android.content.SharedPreferences;
+import android.net.Uri;
 import android.os.Bundle;
-import android.support.annotation.NonNull;
-import android.support.v4.app.ActivityCompat;
-import android.support.v4.content.ContextCompat;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.os.Trace;
+import android.support.annotation.WorkerThread;
 import android.support.v7.app.AlertDialog;
 import android.support.v7.app.AppCompatActivity;
 import android.support.v7.widget.Toolbar;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
+import android.util.Log;
 import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.Toast;
 
-import cse340.menus.enums.MenuType;
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cse340.menus.enums.CommitType;
+import cse340.menus.views.CommitPolicy;
 import cse340.menus.views.MenuExperimentView;
-import cse340.menus.views.CustomMenuView;
-import cse340.menus.views.NormalMenuView;
-import cse340.menus.views.PieMenuView;
 
 
 public abstract class AbstractMainActivity extends AppCompatActivity {
 
+    /** The directory (inside the app's external files) that results are written to */
+    private static final String RESULTS_DIRECTORY = "CSE340_Menus";
+
+    /** The directory (next to RESULTS_DIRECTORY) that exported archives are written to */
+    private static final String EXPORT_DIRECTORY = "CSE340_Menus_exports";
+
+    /** Where the folder picked for results is remembered */
+    private static final String PREFERENCES = "results";
+    private static final String PREF_RESULT_FOLDER = "resultFolder";
+
+    /** Request code for picking a result folder */
+    private static final int REQUEST_RESULT_FOLDER = 1;
+
     /** The layout for the entire application */
     protected FrameLayout mMainLayout;
 
@@ -41,6 +64,38 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
     /** The current session participant */
     protected int mParticipantNum;
 
+    /** Remembers which items get selected, so adaptive menus can put them first */
+    protected SelectionModel mSelectionModel;
+
+    /** The options applied to each menu type that supports them (see MenuRegistry.Entry) */
+    protected final MenuOptions mOptions = new MenuOptions();
+
+    /**
+     * The menu for the next trial, built and attached (invisible) while the app was idle,
+     * and the trial it was built for. Null if it hasn't been built yet.
+     */
+    private MenuExperimentView mPreparedMenu;
+    private ExperimentTrial mPreparedTrial;
+
+    /** The options and item order (null if not reordered) the prepared menu was set up with */
+    private MenuOptions mPreparedOptions;
+    private int[] mPreparedOrder;
+
+    /**
+     * Sessions are loaded here, off the UI thread. The tasks only hold the application
+     * context and a weak reference to the activity, so they never keep an activity alive.
+     */
+    private static final ExecutorService SESSION_LOADER = Executors.newSingleThreadExecutor();
+
+    /** Posts loaded sessions and finished exports back to the UI thread */
+    private static final Handler MAIN_HANDLER = new Handler(Looper.getMainLooper());
+
+    /** Counts calls to startExperimentSession, so only the latest session is shown */
+    private int mSessionGeneration;
+
+    /** Whether reportFullyDrawn has been called, which happens once the first session shows */
+    private boolean mReportedFullyDrawn;
+
     /**
      * Callback that is called when the activity is first created.
      * @param savedInstanceState contains the activity's previously saved state
@@ -55,7 +110,13 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
         Toolbar toolbar = findViewById(R.id.toolbar);
         setSupportActionBar(toolbar);
 
+        mSelectionModel = SelectionModel.get(this);
+
         mMainLayout.setOnTouchListener((view, event) -> {
+            if (mMenuView == null) {
+                // the first menu is still being prepared
+                return false;
+            }
             if (event.getAction() == MotionEvent.ACTION_DOWN) {
                 // convert event to child coordinates
                 mMenuView.setX(event.getX());
@@ -64,6 +125,16 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
             event.offsetLocation(-mMenuView.getX(), -mMenuView.getY());
             return mMenuView.onTouchEvent(event);
         });
+
+        // Screen readers consume the touches above and click the layout on a double tap
+        // instead, so a click opens the menu in the middle of the layout
+        mMainLayout.setContentDescription(getString(R.string.open_menu_accessibility));
+        mMainLayout.setOnClickListener(view -> {
+            if (mMenuView != null) {
+                mMenuView.openForAccessibility(mMainLayout.getWidth() / 2f,
+                        mMainLayout.getHeight() / 2f);
+            }
+        });
     }
 
 
@@ -76,23 +147,96 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
         mMainLayout.removeView(mMenuView);
 
         // Create Menu based on trial (need to check what menu the current trial requires).
-        MenuType cur = trial.getMenu();
-
-        // Create Menu based on ExperimentSession of current task.
-        if (cur == MenuType.NORMAL) {
-            mMenuView = new NormalMenuView(this, trial);
-        } else if (cur == MenuType.PIE) {
-            mMenuView = new PieMenuView(this, trial);
-        } else if (cur == MenuType.CUSTOM) {
-            mMenuView = new CustomMenuView(this, trial);
+        // It was usually built and set up while the participant was busy with the previous
+        // trial, and only needs redoing if the options or the ranking changed since.
+        int[] order = adaptiveOrder(trial);
+        if (trial == mPreparedTrial && mOptions.equals(mPreparedOptions)) {
+            mMenuView = mPreparedMenu;
+            if (!Arrays.equals(order, mPreparedOrder)) {
+                // The previous trial's selection changed the ranking
+                mMenuView.setItemOrder(order);
+            }
+            mPreparedMenu = null;
+            mPreparedTrial = null;
         } else {
-            throw new IllegalStateException("trial menu type invalid");
+            discardPreparedMenu();
+            mMenuView = MenuRegistry.create(this, trial);
+            configureMenu(mMenuView, trial, order);
         }
+        trial.setAdaptive(order != null);
 
-        mMainLayout.addView(mMenuView);
+        if (mMenuView.getParent() == null) {
+            mMainLayout.addView(mMenuView);
+        }
         mMenuView.setVisibility(View.INVISIBLE);
+        mMenuView.prepare();
+
+        prepareNextMenu();
     }
 
+    /**
+     * Builds the next trial's menu the next time the UI thread is idle, so that it doesn't
+     * have to be built between one trial's ACTION_UP and the next one's ACTION_DOWN. The menu
+     * is attached invisibly so it is also measured and laid out ahead of time.
+     */
+    private void prepareNextMenu() {
+        final ExperimentTrial next = mSession != null ? mSession.peekNext() : null;
+        if (next == null) {
+            return;
+        }
+        Looper.myQueue().addIdleHandler(() -> {
+            // Skip it if the session moved on while waiting
+            if (mSession == null || mSession.peekNext() != next || mPreparedTrial == next) {
+                return false;
+            }
+            Trace.beginSection("prepareNextMenu");
+            try {
+                discardPreparedMenu();
+                mPreparedMenu = MenuRegistry.create(this, next);
+                // Set up as it will be shown, since reordering the items refits the labels
+                mPreparedOptions = new MenuOptions(mOptions);
+                mPreparedOrder = adaptiveOrder(next);
+                configureMenu(mPreparedMenu, next, mPreparedOrder);
+                mPreparedMenu.prepare();
+                mPreparedMenu.setVisibility(View.INVISIBLE);
+                mMainLayout.addView(mPreparedMenu);
+                mPreparedTrial = next;
+            } finally {
+                Trace.endSection();
+            }
+            return false;
+        });
+    }
+
+    // Adaptive menus show the most frequently and recently selected items first. Returns the
+    // order to show a trial's items in, or null if its menu shouldn't be reordered (which
+    // includes when the selection model hasn't been loaded, so the trial isn't recorded as
+    // adaptive)
+    private int[] adaptiveOrder(ExperimentTrial trial) {
+        if (!mOptions.isAdaptive() || !MenuRegistry.get(trial.getMenu()).supportsAdaptive()) {
+            return null;
+        }
+        return mSelectionModel.rank(trial.getMenuContents());
+    }
+
+    // Applies the current options and an item order (or null) to a new menu for a trial
+    private void configureMenu(MenuExperimentView view, ExperimentTrial trial, int[] order) {
+        view.setCommitPolicy(CommitPolicy.forType(mOptions.getCommitType()));
+        view.setFrameAlignedInput(mOptions.isFrameAligned());
+        MenuRegistry.get(trial.getMenu()).configure(view, mOptions);
+        if (order != null) {
+            view.setItemOrder(order);
+        }
+    }
+
+    // Removes the menu built ahead of time, if there is one
+    private void discardPreparedMenu() {
+        if (mPreparedMenu != null) {
+            mMainLayout.removeView(mPreparedMenu);
+            mPreparedMenu = null;
+            mPreparedTrial = null;
+        }
+    }
 
     /**
      * This uses inflate to create a menu with options for the session.
@@ -140,6 +284,45 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
         } else if (itemID == R.id.action_next_session) {
             nextSession();
             return true;
+        } else if (itemID == R.id.action_export_results) {
+            exportResults();
+            return true;
+        } else if (itemID == R.id.action_choose_result_folder) {
+            startActivityForResult(new Intent(Intent.ACTION_OPEN_DOCUMENT_TREE),
+                    REQUEST_RESULT_FOLDER);
+            return true;
+        } else if (itemID == R.id.action_adaptive) {
+            mOptions.setAdaptive(!mOptions.isAdaptive());
+            item.setChecked(mOptions.isAdaptive());
+            return true;
+        } else if (itemID == R.id.action_marking) {
+            mOptions.setMarking(!mOptions.isMarking());
+            item.setChecked(mOptions.isMarking());
+            return true;
+        } else if (itemID == R.id.action_frame_aligned) {
+            mOptions.setFrameAligned(!mOptions.isFrameAligned());
+            item.setChecked(mOptions.isFrameAligned());
+            return true;
+        } else if (itemID == R.id.action_square_dead_zones) {
+            mOptions.setSquareDeadZones(!mOptions.isSquareDeadZones());
+            item.setChecked(mOptions.isSquareDeadZones());
+            return true;
+        } else if (itemID == R.id.action_commit_release) {
+            mOptions.setCommitType(CommitType.RELEASE);
+            item.setChecked(true);
+            return true;
+        } else if (itemID == R.id.action_commit_dwell) {
+            mOptions.setCommitType(CommitType.DWELL);
+            item.setChecked(true);
+            return true;
+        } else if (itemID == R.id.action_commit_crossing) {
+            mOptions.setCommitType(CommitType.CROSSING);
+            item.setChecked(true);
+            return true;
+        } else if (itemID == R.id.action_commit_pressure) {
+            mOptions.setCommitType(CommitType.PRESSURE);
+            item.setChecked(true);
+            return true;
         }
 
         return false;
@@ -163,7 +346,7 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
     }
 
     /**
-     * Erases the CSV file where the experimental data is being stored
+     * Erases the CSV files where the current session's experimental data is being stored
      */
     protected void resetAndClearCSV() {
         mParticipantNum = -1;
@@ -197,6 +380,10 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
     /**
      * Start the new ExperimentSession with a given participant ID/Number. If there is a new
      * session ready, show the menu for that Trial.
+     *
+     * Loading the tasks, creating the trials and opening the result files happen on a
+     * background thread so the activity can draw its first frame right away. The first menu
+     * is attached once the session is ready.
      */
     protected void startExperimentSession() {
 
@@ -204,37 +391,166 @@ public abstract class AbstractMainActivity extends AppCompatActivity {
         //mSession = new ExperimentSession(getAssets(), mParticipantNum);
 
         // 20sp - create a random participant ID
-        int participantID = (int)(Math.random() * 1000);
-        mSession = new ExperimentSession(getAssets(), participantID);
+        final int participantID = (int)(Math.random() * 1000);
+        if (mSession != null) {
+            mSession.finish();
+            mSession = null;
+        }
+        mMainLayout.removeView(mMenuView);
+        mMenuView = null;
+        discardPreparedMenu();
+
+        // Ignore sessions that finish loading after a newer one was started
+        final int generation = ++mSessionGeneration;
+        final long startTime = SystemClock.uptimeMillis();
+        final Context appContext = getApplicationContext();
+        final WeakReference<AbstractMainActivity> activityRef = new WeakReference<>(this);
+        SESSION_LOADER.execute(() -> {
+            Trace.beginSection("startExperimentSession");
+            final ExperimentSession session;
+            try {
+                long sessionId = System.currentTimeMillis();
+                session = new ExperimentSession(appContext.getAssets(), participantID, sessionId,
+                        createResultSink(appContext, participantID, sessionId));
+                session.setTrialStore(TrialStore.getInstance(appContext));
+                // So the first trial of an adaptive session is ranked against the saved model
+                SelectionModel.get(appContext).awaitLoaded();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                Trace.endSection();
+            }
+
+            MAIN_HANDLER.post(() -> {
+                AbstractMainActivity activity = activityRef.get();
+                if (activity == null || generation != activity.mSessionGeneration
+                        || activity.isFinishing()) {
+                    session.finish();
+                    return;
+                }
+                activity.showSession(session, startTime);
+            });
+        });
+    }
 
-        if (mSession.hasNext()) {
-            showMenuForTrial(mSession.next());
+    /**
+     * Shows the first menu of a session that finished loading.
+     *
+     * @param session The loaded session
+     * @param startTime When loading started, from SystemClock.uptimeMillis
+     */
+    private void showSession(ExperimentSession session, long startTime) {
+        Trace.beginSection("showFirstMenu");
+        try {
+            mSession = session;
+            mSession.activate();
+            if (mSession.hasNext()) {
+                showMenuForTrial(mSession.next());
+            }
+        } finally {
+            Trace.endSection();
+        }
+        Log.i(ExperimentSession.TAG, "Session ready for interaction after "
+                + (SystemClock.uptimeMillis() - startTime) + " ms");
+        if (!mReportedFullyDrawn) {
+            mReportedFullyDrawn = true;
+            reportFullyDrawn();
         }
     }
 
     /**
-     * Get permission to write data to the csv file
-     * @param permission
+     * Creates where a new session's results are written. This is the folder picked with
+     * "Choose Result Folder" if there is one, otherwise the app's own external storage, which
+     * needs no permissions. Download those results with
+     * "adb pull /storage/emulated/0/Android/data/cse340.menus/files/CSE340_Menus".
+     *
+     * Called on SESSION_LOADER, since creating a document in the picked folder is IO.
+     *
+     * @param context The application context
+     * @param participantNum The participant doing the session
+     * @param sessionId Identifies the session, unique for the participant
+     * @return The sink, batched so that writing never blocks the UI thread
      */
-    protected void ensurePermission(String permission) {
-        int res = ContextCompat.checkSelfPermission(this, permission);
-        if (res != PackageManager.PERMISSION_GRANTED) {
-            ActivityCompat.requestPermissions(this, new String[] { permission }, PackageManager.PERMISSION_GRANTED);
+    @WorkerThread
+    private static ResultSink createResultSink(Context context, int participantNum,
+                                               long sessionId) {
+        String folder = context.getSharedPreferences(PREFERENCES, MODE_PRIVATE)
+                .getString(PREF_RESULT_FOLDER, null);
+        if (folder != null) {
+            try {
+                return new BatchingResultSink(new DocumentResultSink(context.getContentResolver(),
+                        Uri.parse(folder), participantNum, sessionId, ExperimentSession.CSV_HEADER));
+            } catch (IOException | SecurityException | IllegalArgumentException e) {
+                Log.e(ExperimentSession.TAG, "Couldn't write to " + folder + ", using app storage", e);
+            }
         }
+
+        return new BatchingResultSink(new ShardedResultStore(getResultDirectory(context),
+                participantNum, sessionId, ExperimentSession.CSV_HEADER));
     }
 
     /**
-     * @inheritDoc
+     * @param context Any context in the app
+     * @return the directory the results of every session are stored in, when they are
+     * stored in the app's own storage
      */
-    @Override
-    public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
-        super.onRequestPermissionsResult(requestCode, permissions, grantResults);
+    protected static File getResultDirectory(Context context) {
+        File root = context.getExternalFilesDir(null);
+        return new File(root != null ? root : context.getFilesDir(), RESULTS_DIRECTORY);
+    }
 
-        for (int res : grantResults) {
-            if (res != PackageManager.PERMISSION_GRANTED) {
-                Toast.makeText(this, "Failed to grant permissions", Toast.LENGTH_LONG).show();
+    /**
+     * Packs the shards completed since the last export into a zip archive on a background
+     * thread, and tells the user where it is when done.
+     */
+    protected void exportResults() {
+        // The thread only holds the application context, the export may outlive the activity
+        final Context appContext = getApplicationContext();
+        File results = getResultDirectory(appContext);
+        final ResultExporter exporter = new ResultExporter(results,
+                new File(results.getParentFile(), EXPORT_DIRECTORY),
+                TrialStore.getInstance(appContext));
+        new Thread(() -> {
+            String message;
+            try {
+                File archive = exporter.export(ExperimentSession.getActiveResultDirectory());
+                message = archive != null
+                        ? appContext.getString(R.string.export_done, archive.getPath())
+                        : appContext.getString(R.string.export_nothing_new);
+            } catch (IOException e) {
+                Log.e(ExperimentSession.TAG, "Export failed", e);
+                message = appContext.getString(R.string.export_failed);
             }
+            final String result = message;
+            MAIN_HANDLER.post(() -> Toast.makeText(appContext, result, Toast.LENGTH_LONG).show());
+        }, "ResultExport").start();
+    }
+
+    /**
+     * Remembers the folder picked for results. It is used from the next session on.
+     */
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data) {
+        super.onActivityResult(requestCode, resultCode, data);
+        if (requestCode == REQUEST_RESULT_FOLDER && resultCode == RESULT_OK && data != null) {
+            Uri folder = data.getData();
+            getContentResolver().takePersistableUriPermission(folder,
+                    Intent.FLAG_GRANT_READ_URI_PERMISSION | Intent.FLAG_GRANT_WRITE_URI_PERMISSION);
+            SharedPreferences.Editor editor =
+                    getSharedPreferences(PREFERENCES, MODE_PRIVATE).edit();
+            editor.putString(PREF_RESULT_FOLDER, folder.toString());
+            editor.apply();
         }
     }
 
+    /**
+     * Make sure no results are left in memory while the app is in the background.
+     */
+    @Override
+    protected void onPause() {
+        super.onPause();
+        if (mSession != null) {
+            mSession.flush();
+        }
+    }
 }
@@ -0,0 +1,89 @@
+package cse340.menus;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Collects rows in memory and hands them to another sink in batches on a background thread,
+ * so recording a trial never waits on storage.
+ */
+public class BatchingResultSink implements ResultSink {
+
+    /** How many rows to collect before writing them out */
+    private static final int BATCH_SIZE = 12;
+
+    /** The sink that actually stores the rows. Only written to on mExecutor. */
+    private final ResultSink mSink;
+
+    /** Rows waiting to be written */
+    private List<String> mPending = new ArrayList<>(BATCH_SIZE);
+
+    /** Writes happen here, in the order they were submitted */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /**
+     * Constructor
+     *
+     * @param sink The sink to write batches to
+     */
+    public BatchingResultSink(ResultSink sink) {
+        mSink = sink;
+    }
+
+    @Override
+    public void append(String row) {
+        mPending.add(row);
+        if (mPending.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (mPending.isEmpty() || mExecutor.isShutdown()) {
+            return;
+        }
+        final List<String> batch = mPending;
+        mPending = new ArrayList<>(BATCH_SIZE);
+        mExecutor.execute(() -> {
+            try {
+                for (String row : batch) {
+                    mSink.append(row);
+                }
+                mSink.flush();
+            } catch (IOException e) {
+                Log.e(ExperimentSession.TAG, "File write failed", e);
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (mExecutor.isShutdown()) {
+            return;
+        }
+        flush();
+        mExecutor.execute(mSink::close);
+        mExecutor.shutdown();
+    }
+
+    @Override
+    public void delete() {
+        mPending.clear();
+        if (!mExecutor.isShutdown()) {
+            mExecutor.execute(mSink::delete);
+        }
+    }
+
+    @Override
+    public File getDirectory() {
+        // Fixed when the sink was created, so it can be read from any thread
+        return mSink.getDirectory();
+    }
+}
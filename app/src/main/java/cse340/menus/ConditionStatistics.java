@@ -0,0 +1,162 @@
+package cse340.menus;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Running statistics of the trials in one experimental condition (menu type + task type).
+ * Every value is updated in a single pass with constant memory as each trial completes:
+ * the mean and variance with Welford's algorithm, and the median with the P-squared
+ * estimator (Jain and Chlamtac), which tracks five markers instead of keeping every sample.
+ */
+public class ConditionStatistics {
+
+    /** The quantile estimated by the P-squared markers */
+    private static final double P = 0.5;
+
+    /** Increments of the desired marker positions per sample */
+    private static final double[] DESIRED_INCREMENTS = {0, P / 2, P, (1 + P) / 2, 1};
+
+    /** Number of trials, and how many of them selected the wrong item */
+    private int mCount;
+    private int mErrors;
+
+    /** Welford's running mean and sum of squared differences from the mean */
+    private double mMean;
+    private double mM2;
+
+    /** P-squared marker heights, actual positions and desired positions */
+    private final double[] mHeights = new double[5];
+    private final int[] mPositions = new int[5];
+    private final double[] mDesired = new double[5];
+
+    /**
+     * Add one trial to the statistics.
+     *
+     * @param durationMillis How long the trial took
+     * @param error Whether the wrong item was selected
+     */
+    public void add(long durationMillis, boolean error) {
+        double x = durationMillis;
+        mCount++;
+        if (error) {
+            mErrors++;
+        }
+
+        double delta = x - mMean;
+        mMean += delta / mCount;
+        mM2 += delta * (x - mMean);
+
+        addToMedian(x);
+    }
+
+    private void addToMedian(double x) {
+        // The first five samples become the initial markers
+        if (mCount <= 5) {
+            mHeights[mCount - 1] = x;
+            if (mCount == 5) {
+                Arrays.sort(mHeights);
+                for (int i = 0; i < 5; i++) {
+                    mPositions[i] = i + 1;
+                    mDesired[i] = 1 + 4 * DESIRED_INCREMENTS[i];
+                }
+            }
+            return;
+        }
+
+        // Find the cell the sample falls in, extending the extremes if needed
+        int k;
+        if (x < mHeights[0]) {
+            mHeights[0] = x;
+            k = 0;
+        } else if (x >= mHeights[4]) {
+            mHeights[4] = x;
+            k = 3;
+        } else {
+            k = 0;
+            while (x >= mHeights[k + 1]) {
+                k++;
+            }
+        }
+
+        for (int i = k + 1; i < 5; i++) {
+            mPositions[i]++;
+        }
+        for (int i = 0; i < 5; i++) {
+            mDesired[i] += DESIRED_INCREMENTS[i];
+        }
+
+        // Move the middle markers towards their desired positions
+        for (int i = 1; i < 4; i++) {
+            double d = mDesired[i] - mPositions[i];
+            if ((d >= 1 && mPositions[i + 1] - mPositions[i] > 1)
+                    || (d <= -1 && mPositions[i - 1] - mPositions[i] < -1)) {
+                int s = d >= 0 ? 1 : -1;
+                double height = parabolic(i, s);
+                if (mHeights[i - 1] < height && height < mHeights[i + 1]) {
+                    mHeights[i] = height;
+                } else {
+                    mHeights[i] += s * (mHeights[i + s] - mHeights[i])
+                            / (mPositions[i + s] - mPositions[i]);
+                }
+                mPositions[i] += s;
+            }
+        }
+    }
+
+    // Piecewise parabolic prediction of marker i's height after moving it by s
+    private double parabolic(int i, int s) {
+        double[] q = mHeights;
+        int[] n = mPositions;
+        return q[i] + (double) s / (n[i + 1] - n[i - 1])
+                * ((n[i] - n[i - 1] + s) * (q[i + 1] - q[i]) / (n[i + 1] - n[i])
+                + (n[i + 1] - n[i] - s) * (q[i] - q[i - 1]) / (n[i] - n[i - 1]));
+    }
+
+    //region Getters
+    public int getCount() {
+        return mCount;
+    }
+
+    public double getMean() {
+        return mMean;
+    }
+
+    /**
+     * @return the sample variance, or 0 with fewer than two trials
+     */
+    public double getVariance() {
+        return mCount > 1 ? mM2 / (mCount - 1) : 0;
+    }
+
+    /**
+     * @return the estimated median, exact with five or fewer trials
+     */
+    public double getMedian() {
+        if (mCount == 0) {
+            return 0;
+        }
+        if (mCount < 5) {
+            double[] samples = Arrays.copyOf(mHeights, mCount);
+            Arrays.sort(samples);
+            return mCount % 2 == 1 ? samples[mCount / 2]
+                    : (samples[mCount / 2 - 1] + samples[mCount / 2]) / 2;
+        }
+        return mHeights[2];
+    }
+
+    public double getErrorRate() {
+        return mCount > 0 ? (double) mErrors / mCount : 0;
+    }
+    //endregion
+
+    /***
+     * Summarizes the statistics on one line.
+     *
+     * @return A summary ready to print
+     */
+    public String toString() {
+        return String.format(Locale.US, "n=%d mean=%.0fms sd=%.0fms median=%.0fms errors=%.0f%%",
+                mCount, mMean, Math.sqrt(getVariance()), getMedian(), 100 * getErrorRate());
+    }
+}
@@ -0,0 +1,88 @@
+package cse340.menus;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.DocumentsContract;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Writes a session's results to a document in a folder the user picked through the Storage
+ * Access Framework (for example Downloads or a cloud drive), so no storage permission is
+ * needed. Each session gets its own document, named after the participant and session.
+ */
+public class DocumentResultSink implements ResultSink {
+
+    /** Used to create, write and delete the document */
+    private final ContentResolver mResolver;
+
+    /** The document the results are written to */
+    private final Uri mDocument;
+
+    /** The open document */
+    private Writer mWriter;
+
+    /**
+     * Constructor. Creates the session's document in the folder and writes the header.
+     * This goes through the document provider, which may be slow (or remote), so it must not
+     * be called on the UI thread.
+     *
+     * @param resolver The content resolver to access the folder with
+     * @param tree The folder returned by ACTION_OPEN_DOCUMENT_TREE
+     * @param participantNum The participant doing the session
+     * @param sessionId Identifies the session, unique for the participant
+     * @param header The CSV header written at the start of the document
+     * @throws IOException if the document couldn't be created
+     */
+    @WorkerThread
+    public DocumentResultSink(ContentResolver resolver, Uri tree, int participantNum,
+                              long sessionId, String header) throws IOException {
+        mResolver = resolver;
+        Uri folder = DocumentsContract.buildDocumentUriUsingTree(
+                tree, DocumentsContract.getTreeDocumentId(tree));
+        mDocument = DocumentsContract.createDocument(resolver, folder, "text/csv",
+                "participant_" + participantNum + "_session_" + sessionId + ".csv");
+        if (mDocument == null) {
+            throw new IOException("Couldn't create a document in " + tree);
+        }
+        mWriter = new BufferedWriter(new OutputStreamWriter(
+                resolver.openOutputStream(mDocument, "wa")));
+        append(header);
+    }
+
+    @Override
+    public void append(String row) throws IOException {
+        mWriter.append(row);
+        mWriter.append('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        mWriter.flush();
+    }
+
+    @Override
+    public void close() {
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            Log.e(ExperimentSession.TAG, "Couldn't close " + mDocument, e);
+        }
+    }
+
+    @Override
+    public void delete() {
+        close();
+        try {
+            DocumentsContract.deleteDocument(mResolver, mDocument);
+        } catch (FileNotFoundException e) {
+            Log.e(ExperimentSession.TAG, "Couldn't delete " + mDocument, e);
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package cse340.menus;
+
+/**
+ * Records where the finger hesitated during one selection: how long each item was
+ * highlighted, how many times the highlight changed, and the order items were highlighted in.
+ * Everything is kept in primitive arrays allocated up front, and each event only does work
+ * when the highlight changes, so updating is constant time and allocation free.
+ *
+ * Only the first MAX_VISITS_PER_ITEM * size items of the visit sequence are kept; the change
+ * count is always exact.
+ */
+public class DwellTracker {
+
+    /** How many visits per menu item the sequence has room for */
+    private static final int MAX_VISITS_PER_ITEM = 4;
+
+    /** How long each item was highlighted, in milliseconds */
+    private final long[] mDwellMillis;
+
+    /** The items in the order they were highlighted */
+    private final int[] mVisits;
+    private int mVisitCount;
+
+    /** How many times the highlight changed, including to and from nothing */
+    private int mChanges;
+
+    /** The highlighted item (-1 for none) and when it was highlighted */
+    private int mCurrent = -1;
+    private long mSince;
+
+    /**
+     * Constructor
+     *
+     * @param size The number of items in the menu
+     * @param startMillis When the selection started
+     */
+    public DwellTracker(int size, long startMillis) {
+        mDwellMillis = new long[size];
+        mVisits = new int[MAX_VISITS_PER_ITEM * size];
+        mSince = startMillis;
+    }
+
+    /**
+     * Called for every event of the selection.
+     *
+     * @param item The item highlighted after the event, or -1
+     * @param timeMillis When the event happened
+     */
+    public void update(int item, long timeMillis) {
+        if (item == mCurrent) {
+            return;
+        }
+        if (mCurrent >= 0) {
+            mDwellMillis[mCurrent] += timeMillis - mSince;
+        }
+        mCurrent = item;
+        mSince = timeMillis;
+        mChanges++;
+        if (item >= 0 && mVisitCount < mVisits.length) {
+            mVisits[mVisitCount++] = item;
+        }
+    }
+
+    /**
+     * Called when the selection ends, to count the time spent on the last item.
+     *
+     * @param timeMillis When the selection ended
+     */
+    public void finish(long timeMillis) {
+        if (mCurrent >= 0) {
+            mDwellMillis[mCurrent] += timeMillis - mSince;
+        }
+        mSince = timeMillis;
+    }
+
+    public long getDwellMillis(int item) {
+        return mDwellMillis[item];
+    }
+
+    public int getChanges() {
+        return mChanges;
+    }
+
+    public int getVisitCount() {
+        return mVisitCount;
+    }
+
+    public int getVisit(int i) {
+        return mVisits[i];
+    }
+
+    /**
+     * Appends the trial's columns: each item's dwell time and the visited items, each
+     * separated by '/', with the number of highlight changes between them.
+     *
+     * @param s Where to append them
+     */
+    public void appendTo(StringBuilder s) {
+        for (int i = 0; i < mDwellMillis.length; i++) {
+            if (i > 0) {
+                s.append('/');
+            }
+            s.append(mDwellMillis[i]);
+        }
+        s.append(',');
+        s.append(mChanges);
+        s.append(',');
+        for (int i = 0; i < mVisitCount; i++) {
+            if (i > 0) {
+                s.append('/');
+            }
+            s.append(mVisits[i]);
+        }
+    }
+}
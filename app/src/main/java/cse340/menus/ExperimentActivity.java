@@ -1,7 +1,8 @@
 package cse340.menus;
 
-import android.Manifest;
 import android.os.Bundle;
+import android.support.v7.app.AlertDialog;
+import android.util.Log;
 import android.widget.TextView;
 import android.widget.Toast;
 
@@ -17,11 +18,8 @@ public class ExperimentActivity extends AbstractMainActivity {
 
         mParticipantNum = 0;
 
-        // programmatically asks for permissions to write to file storage
-        // this is for saving the CSV file to disk
-        ensurePermission(Manifest.permission.WRITE_EXTERNAL_STORAGE);
-        ensurePermission(Manifest.permission.READ_EXTERNAL_STORAGE);
-
+        // Results go to app specific storage or a folder picked through the Storage
+        // Access Framework, so no storage permissions are needed
         startExperimentSession();
     }
 
@@ -52,6 +50,13 @@ public class ExperimentActivity extends AbstractMainActivity {
     private void trialCompleted() {
         if (mSession != null) {
             mSession.recordResult();
+
+            ExperimentTrial trial = mSession.getCurrentTrial();
+            if (trial.getSelectedIndex() != -1) {
+                mSelectionModel.recordSelection(
+                        trial.getMenuContents().get(trial.getSelectedIndex()));
+            }
+
             if (mSession.hasNext()) {
                 mSession.next();
                 showMenuForTrial(mSession.getCurrentTrial());
@@ -61,6 +66,8 @@ public class ExperimentActivity extends AbstractMainActivity {
                 );
                 instructionTextView.setText(R.string.session_completed);
                 mMenuView.announce(getString(R.string.session_completed));
+                mSession.finish();
+                showSummary(mSession.getSummary());
                 mSession = null;
                 mMainLayout.removeView(mMenuView);
             }
@@ -72,4 +79,14 @@ public class ExperimentActivity extends AbstractMainActivity {
             ).show();
         }
     }
+
+    // Shows the session's statistics so the facilitator can check the data before moving on
+    private void showSummary(String summary) {
+        Log.i(ExperimentSession.TAG, "Session summary:\n" + summary);
+        new AlertDialog.Builder(this)
+                .setTitle(R.string.session_summary)
+                .setMessage(summary)
+                .setPositiveButton(android.R.string.ok, null)
+                .show();
+    }
 }
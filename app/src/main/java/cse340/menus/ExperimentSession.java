@@ -1,23 +1,21 @@
 package cse340.menus;
 
 import android.content.res.AssetManager;
-import android.os.Environment;
+import android.os.Trace;
 import android.util.Log;
 
+import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.InputMismatchException;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 
 import cse340.menus.enums.MenuType;
 import cse340.menus.enums.TaskType;
@@ -32,17 +30,37 @@ public class ExperimentSession implements Iterator {
     /** Maximum number of menu items to go through in each condition. */
     private final int ITEM_MAX = 4;
 
-    /** This is the file where experiment results will be recorded */
-    private File mExperimentResultCSV;
+    /** The first line of every result file, naming the columns of ExperimentTrial.toString */
+    public static final String CSV_HEADER = "participant, trialNum, repeatNum, menu, task, startTime, taskDuration (millis), Start x, Start y, End x, End y, selected option, prompted option, all options, layout seed, layout, adaptive, marking, expert selection, dwell times (millis), highlight changes, visited items, error type, target edge distance (px), commit policy, frame aligned input, touch samples, accessibility latency (millis), mean pressure, max pressure, mean touch major (px), mean touch minor (px), mean orientation (rad), tool type, accessibility open latency (millis)";
+
+    /** This is where experiment results will be recorded */
+    private final ResultSink mResultStore;
+
+    /** An indexed copy of the results, so they can be queried on the device. May be null. */
+    private TrialStore mTrialStore;
+
+    /** Identifies this session, in mTrialStore and in where mResultStore writes */
+    private final long mSessionId;
+
+    /** Whether mResultStore writes rows to ShardedResultStore shards */
+    private final boolean mResultsInShards;
+
+    /** The session being shown, in either activity, or null */
+    private static volatile ExperimentSession sActiveSession;
 
     /** This is the current participant number **/
     private int mParticipantNum;
 
     /** This is the set of tasks for this session **/
     private Map<TaskType, List<String>> mTasks;
-    private Iterator<ExperimentTrial> mTrials;
+    private List<ExperimentTrial> mTrials = Collections.emptyList();
+    private int mNextTrial;
     private ExperimentTrial mCurrentTrial;
 
+    /** Running statistics for each condition, indexed by conditionIndex */
+    private final ConditionStatistics[] mStatistics =
+            new ConditionStatistics[MenuType.values().length * TaskType.values().length];
+
     /**
      * Constructor generates a list of trials based on the available types of menus
      * (normal and pie) and tasks (linear, relative and unclassed) and the number of
@@ -50,26 +68,42 @@ public class ExperimentSession implements Iterator {
      *
      * @param assets Gives this class access to the csv files needed to set things up.
      * @param participantNum The participant number for the current participant
+     * @param sessionId Identifies the session, the same id the result sink was created with
+     * @param results Where the results of this session will be written, or null to not record them
      */
-    public ExperimentSession(AssetManager assets, int participantNum) {
+    public ExperimentSession(AssetManager assets, int participantNum, long sessionId,
+                             ResultSink results) {
         setParticipantNum(participantNum);
+        mSessionId = sessionId;
+        mResultStore = results;
+        mResultsInShards = results != null && results.getDirectory() != null;
 
-        // Create CSV file to log test results.
-        // Download the result CSV by "adb pull /storage/emulated/0/CSE340_PieMenu/TestResult.csv"
-        // or use Android File Transfer (may not work with emulator)
-        createCSV();
+        for (int i = 0; i < mStatistics.length; i++) {
+            mStatistics[i] = new ConditionStatistics();
+        }
 
         try {
             Log.i(TAG,"Loading tasks");
-            mTasks = loadTasks("menuContents.csv", assets);
+            Trace.beginSection("ExperimentSession.loadTasks");
+            try {
+                mTasks = loadTasks("menuContents.csv", assets);
+            } finally {
+                Trace.endSection();
+            }
             Log.i(TAG, "Loaded tasks");
 
             // Create experiment trials
-            List<ExperimentTrial> allTrials = createTrials(mTasks);
+            Trace.beginSection("ExperimentSession.createTrials");
+            List<ExperimentTrial> allTrials;
+            try {
+                allTrials = createTrials(mTasks);
+            } finally {
+                Trace.endSection();
+            }
             Log.i(TAG, "Created Trials");
 
             // Store them in the trials variable
-            mTrials = allTrials.iterator();
+            mTrials = allTrials;
             Log.i(TAG, "Created Iterator");
         } catch (Exception e) {
             Log.e(TAG, "Failed to load CSV", e);
@@ -89,41 +123,72 @@ public class ExperimentSession implements Iterator {
     public ExperimentTrial getCurrentTrial() {
         return mCurrentTrial;
     }
+
+    public void setTrialStore(TrialStore trialStore) {
+        this.mTrialStore = trialStore;
+    }
+
+    /**
+     * @return the directory in the app's storage of the session being shown, which may
+     * still be written to, or null if there is none or it is written somewhere else
+     */
+    public static File getActiveResultDirectory() {
+        ExperimentSession session = sActiveSession;
+        return session != null && session.mResultStore != null
+                ? session.mResultStore.getDirectory() : null;
+    }
     //endregion
 
 
     //region Experiment Setup
+    /***
+     * This deletes all the data collected so far in this session. Be careful with it!
+     */
+    public void deleteCSV() {
+        if (mResultStore != null) {
+            mResultStore.delete();
+        }
+        if (mTrialStore != null) {
+            mTrialStore.delete(mSessionId);
+        }
+    }
+
     /**
-     * Creates CSV file that experiment results are stored in.
+     * Writes out any results that are still buffered, for example when the app is paused.
      */
-    private void createCSV() {
-        // Make sure you grant storage permission for this app in Android settings!
+    public void flush() {
+        if (mTrialStore != null) {
+            mTrialStore.flush();
+        }
         try {
-            File path = new File(Environment.getExternalStorageDirectory().getAbsolutePath(), "CSE340_Menus");
-            if (!path.isFile()) path.mkdirs();
-            mExperimentResultCSV = new File(path, "TestResult.csv");
-
-            if (!mExperimentResultCSV.isFile()) {
-                mExperimentResultCSV.createNewFile();
-                FileOutputStream fOut = new FileOutputStream(mExperimentResultCSV, true);
-                OutputStreamWriter myOutWriter = new OutputStreamWriter(fOut);
-                myOutWriter.append("participant, trialNum, repeatNum, menu, task, startTime, taskDuration (millis), Start x, Start y, End x, End y, selected option, prompted option, all options");
-                myOutWriter.append('\n');
-                myOutWriter.close();
-                fOut.flush();
-                fOut.close();
+            if (mResultStore != null) {
+                mResultStore.flush();
             }
-        } catch (IOException fnfe) {
-            Log.e("createCSV", "Couldn't find or create TestResult.csv");
+        } catch (IOException e) {
+            Log.e(TAG, "File write failed", e);
         }
     }
 
-    /***
-     * This deletes all the data collected so far. Be careful with it!
+    /**
+     * Marks this session as the one being shown, whose results are still being written.
+     * It stays active until it finishes.
      */
-    public void deleteCSV() {
-        if (mExperimentResultCSV != null && mExperimentResultCSV.isFile()) {
-            mExperimentResultCSV.delete();
+    public void activate() {
+        sActiveSession = this;
+    }
+
+    /**
+     * Marks this session's results complete. Call this when the session ends.
+     */
+    public void finish() {
+        if (sActiveSession == this) {
+            sActiveSession = null;
+        }
+        if (mTrialStore != null) {
+            mTrialStore.flush();
+        }
+        if (mResultStore != null) {
+            mResultStore.close();
         }
     }
 
@@ -137,21 +202,25 @@ public class ExperimentSession implements Iterator {
     private Map<TaskType, List<String>> loadTasks(String filename, AssetManager assets) {
         Map<TaskType, List<String>> tasks = new HashMap<>();
 
-        // scan through the CSV file one line at a time
-        try {
-            Scanner scan = new Scanner(new InputStreamReader(assets.open(filename)));
-            scan.useDelimiter("[,\n]");
-
-            while (scan.hasNextLine()) {
-                String taskType = scan.next();
-                String optionList = scan.next();
+        // read through the CSV file one line at a time
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(assets.open(filename)))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                int comma = line.indexOf(',');
+                if (comma < 0) {
+                    throw new IllegalStateException(filename + " is malformed");
+                }
+                String taskType = line.substring(0, comma);
+                String optionList = line.substring(comma + 1);
                 List<String> items = Arrays.asList(optionList.split("/"));
                 tasks.put(TaskType.valueOf(taskType), items);
             }
         } catch (IOException e) {
             throw new IllegalStateException(filename + " not found in assets");
-        } catch (InputMismatchException e) {
-            throw new IllegalStateException(filename + "menuContents.csv is malformed");
         }
 
         return tasks;
@@ -169,11 +238,11 @@ public class ExperimentSession implements Iterator {
 
 
         // create a shuffled list of menus and tasks (randomize order)
-        List<MenuType> shuffledMenus = Arrays.asList(MenuType.values());
+        List<MenuType> shuffledMenus = new ArrayList<>(MenuRegistry.getTypes());
         List<TaskType> shuffledTasks = Arrays.asList(TaskType.values());
         Collections.shuffle(shuffledMenus);
 
-        // iterate through all the conditions (there are six: Two MenuTypes x Three TaskTypes)
+        // iterate through all the conditions (every registered MenuType x every TaskType)
         for (MenuType menu : shuffledMenus) {
             Collections.shuffle(shuffledTasks);
 
@@ -210,30 +279,69 @@ public class ExperimentSession implements Iterator {
 
     //region Iterating through Trials and Recording Results
     /**
-     * Records the result of the current trial to a CSV file setup by createCSV.
+     * Records the result of the current trial to the session's result sink.
      */
     public void recordResult() {
         // Convert trial to a line, and append the line to CSV file.
+        ExperimentTrial trial = getCurrentTrial();
+        String row = trial.toString();
 
         try {
-            FileOutputStream fOut = new FileOutputStream(mExperimentResultCSV, true);
-            OutputStreamWriter myOutWriter = new OutputStreamWriter(fOut);
-            myOutWriter.append(getCurrentTrial().toString());
-            myOutWriter.append('\n');
-            myOutWriter.close();
-            fOut.flush();
-            fOut.close();
+            if (mResultStore != null) {
+                mResultStore.append(row);
+            }
         }
         catch (IOException e) {
             Log.e(TAG, "File write failed", e);
         }
+
+        if (mTrialStore != null) {
+            mTrialStore.insert(mSessionId, trial, row, mResultsInShards);
+        }
+        mStatistics[conditionIndex(trial.getMenu(), trial.getTask())]
+                .add(trial.getTaskDuration(), trial.isError());
+    }
+
+    /**
+     * Get the running statistics for one condition.
+     * @param menu The menu type of the condition
+     * @param task The task type of the condition
+     * @return the statistics of the trials recorded so far in that condition
+     */
+    public ConditionStatistics getStatistics(MenuType menu, TaskType task) {
+        return mStatistics[conditionIndex(menu, task)];
+    }
+
+    /**
+     * Summarizes the trials recorded so far, one condition per line, so the facilitator can
+     * tell whether the session is usable.
+     *
+     * @return A summary ready to show
+     */
+    public String getSummary() {
+        StringBuilder s = new StringBuilder();
+        for (MenuType menu : MenuType.values()) {
+            for (TaskType task : TaskType.values()) {
+                ConditionStatistics stats = getStatistics(menu, task);
+                if (stats.getCount() > 0) {
+                    s.append(menu).append(' ').append(task).append(": ");
+                    s.append(stats).append('\n');
+                }
+            }
+        }
+        return s.toString();
+    }
+
+    // Where a condition's statistics are stored in mStatistics
+    private static int conditionIndex(MenuType menu, TaskType task) {
+        return menu.ordinal() * TaskType.values().length + task.ordinal();
     }
 
     /***
      * @return boolean true if any trials remaining, false otherwise.
      */
     public boolean hasNext() {
-        return mTrials.hasNext();
+        return mNextTrial < mTrials.size();
     }
 
     /***
@@ -242,10 +350,23 @@ public class ExperimentSession implements Iterator {
      * @return Next trial and updates a variable so we have access to it
      */
     public ExperimentTrial next() {
-        mCurrentTrial = mTrials.next();
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        mCurrentTrial = mTrials.get(mNextTrial++);
         return mCurrentTrial;
     }
 
+    /***
+     * Looks at the trial after the current one without moving to it, for example to get its
+     * menu ready ahead of time.
+     *
+     * @return the next trial, or null if this is the last one
+     */
+    public ExperimentTrial peekNext() {
+        return hasNext() ? mTrials.get(mNextTrial) : null;
+    }
+
     /***
      * Creates a summary of the current experiment. Useful for debugging.
      *
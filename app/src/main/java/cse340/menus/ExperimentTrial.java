@@ -5,6 +5,8 @@ import android.text.TextUtils;
 
 import java.util.List;
 
+import cse340.menus.enums.CommitType;
+import cse340.menus.enums.ErrorType;
 import cse340.menus.enums.MenuType;
 import cse340.menus.enums.TaskType;
 
@@ -45,6 +47,42 @@ public class ExperimentTrial {
     /** The final position of the participant's finger */
     private PointF mEndPoint;
 
+    /** The seed the menu's layout was generated from, or null if the layout is fixed */
+    private Long mLayoutSeed;
+
+    /** The layout of the menu as the participant saw it */
+    private MenuLayout mLayout;
+
+    /** Whether the menu's items were reordered by the adaptive model */
+    private boolean mAdaptive;
+
+    /** Whether the menu was a marking menu, and whether it was still hidden at selection */
+    private boolean mMarking;
+    private boolean mExpertSelection;
+
+    /** Every touch sample of the selection, and whether moves were handled once per frame */
+    private TouchSamples mTouchSamples;
+    private boolean mFrameAligned;
+
+    /** How the selection was committed */
+    private CommitType mCommitType;
+
+    /** Where the finger hesitated during the selection */
+    private DwellTracker mDwell;
+
+    /** What kind of mistake the selection was, if the layout is known */
+    private ErrorType mErrorType;
+
+    /** How far the end point was from the prompted item's edge (negative inside it) */
+    private float mTargetDistance = Float.NaN;
+
+    /**
+     * How long the accessibility actions that opened the menu and selected the item took to
+     * take effect (until the next frame), if they did
+     */
+    private float mAccessibilityOpenLatency = Float.NaN;
+    private float mAccessibilityLatency = Float.NaN;
+
     /***
      * Creates a new single trial for the experiment with the specified parameters.
      *
@@ -85,6 +123,13 @@ public class ExperimentTrial {
         mTaskDurationMillSec = java.lang.System.currentTimeMillis() - this.getStartTime();
         mEndPoint = p;
         mSelectedOptionIndex = selectedOption;
+        if (mLayout != null) {
+            mErrorType = mLayout.classifyError(mPromptedOptionIndex, selectedOption, p.x, p.y);
+            mTargetDistance = mLayout.distanceToItem(mPromptedOptionIndex, p.x, p.y);
+        }
+        if (mTouchSamples != null) {
+            mTouchSamples.summarize();
+        }
     }
 
     //Getters and Setters
@@ -104,6 +149,10 @@ public class ExperimentTrial {
         return mStartTime;
     }
 
+    public int getParticipantNum() {
+        return mParticipantNum;
+    }
+
     public int getTrialNum() {
         return mTrialNum;
     }
@@ -111,6 +160,111 @@ public class ExperimentTrial {
     public String getItem() {
         return mMenuContents.get(mPromptedOptionIndex);
     }
+
+    public Long getLayoutSeed() {
+        return mLayoutSeed;
+    }
+
+    public void setLayoutSeed(long layoutSeed) {
+        mLayoutSeed = layoutSeed;
+    }
+
+    public long getTaskDuration() {
+        return mTaskDurationMillSec;
+    }
+
+    public boolean isError() {
+        return mSelectedOptionIndex != mPromptedOptionIndex;
+    }
+
+    public int getSelectedIndex() {
+        return mSelectedOptionIndex;
+    }
+
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+
+    public boolean isMarking() {
+        return mMarking;
+    }
+
+    public void setMarking(boolean marking) {
+        mMarking = marking;
+    }
+
+    public boolean isExpertSelection() {
+        return mExpertSelection;
+    }
+
+    public void setExpertSelection(boolean expertSelection) {
+        mExpertSelection = expertSelection;
+    }
+
+    public TouchSamples getTouchSamples() {
+        return mTouchSamples;
+    }
+
+    public boolean isFrameAligned() {
+        return mFrameAligned;
+    }
+
+    public void setTouchSamples(TouchSamples touchSamples, boolean frameAligned) {
+        mTouchSamples = touchSamples;
+        mFrameAligned = frameAligned;
+    }
+
+    public CommitType getCommitType() {
+        return mCommitType;
+    }
+
+    public void setCommitType(CommitType commitType) {
+        mCommitType = commitType;
+    }
+
+    public ErrorType getErrorType() {
+        return mErrorType;
+    }
+
+    public float getTargetDistance() {
+        return mTargetDistance;
+    }
+
+    public float getAccessibilityLatency() {
+        return mAccessibilityLatency;
+    }
+
+    public void setAccessibilityLatency(float latencyMillis) {
+        mAccessibilityLatency = latencyMillis;
+    }
+
+    public float getAccessibilityOpenLatency() {
+        return mAccessibilityOpenLatency;
+    }
+
+    public void setAccessibilityOpenLatency(float latencyMillis) {
+        mAccessibilityOpenLatency = latencyMillis;
+    }
+
+    public DwellTracker getDwell() {
+        return mDwell;
+    }
+
+    public void setDwell(DwellTracker dwell) {
+        mDwell = dwell;
+    }
+
+    public MenuLayout getLayout() {
+        return mLayout;
+    }
+
+    public void setLayout(MenuLayout layout) {
+        mLayout = layout;
+    }
     //end Getters and Setters
 
     public String toString() {
@@ -142,6 +296,58 @@ public class ExperimentTrial {
         s.append(mPromptedOptionIndex);
         s.append(',');
         s.append(TextUtils.join("/", mMenuContents));
+        s.append(',');
+        if (mLayoutSeed != null) {
+            s.append(mLayoutSeed);
+        }
+        s.append(',');
+        if (mLayout != null) {
+            s.append(mLayout.encode());
+        }
+        s.append(',');
+        s.append(mAdaptive);
+        s.append(',');
+        s.append(mMarking);
+        s.append(',');
+        s.append(mExpertSelection);
+        s.append(',');
+        if (mDwell != null) {
+            mDwell.appendTo(s);
+        } else {
+            s.append(",,");
+        }
+        s.append(',');
+        if (mErrorType != null) {
+            s.append(mErrorType);
+        }
+        s.append(',');
+        if (!Float.isNaN(mTargetDistance)) {
+            s.append(mTargetDistance);
+        }
+        s.append(',');
+        if (mCommitType != null) {
+            s.append(mCommitType);
+        }
+        s.append(',');
+        s.append(mFrameAligned);
+        s.append(',');
+        if (mTouchSamples != null) {
+            mTouchSamples.appendTo(s);
+        }
+        s.append(',');
+        if (!Float.isNaN(mAccessibilityLatency)) {
+            s.append(mAccessibilityLatency);
+        }
+        s.append(',');
+        if (mTouchSamples != null) {
+            mTouchSamples.appendSummaryTo(s);
+        } else {
+            s.append(",,,,,");
+        }
+        s.append(',');
+        if (!Float.isNaN(mAccessibilityOpenLatency)) {
+            s.append(mAccessibilityOpenLatency);
+        }
         return s.toString();
     }
 }
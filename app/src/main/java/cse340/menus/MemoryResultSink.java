@@ -0,0 +1,57 @@
+package cse340.menus;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Keeps results in memory instead of writing them anywhere. It has no Android dependencies,
+ * so it can stand in for the real sinks when running ExperimentSession in local JVM tests.
+ */
+public class MemoryResultSink implements ResultSink {
+
+    /** The rows appended so far, starting with the header */
+    private final List<String> mRows = new ArrayList<>();
+
+    /** Whether close() has been called */
+    private boolean mClosed;
+
+    /**
+     * Constructor
+     *
+     * @param header The CSV header, stored as the first row
+     */
+    public MemoryResultSink(String header) {
+        mRows.add(header);
+    }
+
+    @Override
+    public void append(String row) {
+        mRows.add(row);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+        mClosed = true;
+    }
+
+    @Override
+    public void delete() {
+        mRows.subList(1, mRows.size()).clear();
+    }
+
+    /**
+     * @return the rows appended so far, starting with the header
+     */
+    public List<String> getRows() {
+        return Collections.unmodifiableList(mRows);
+    }
+
+    public boolean isClosed() {
+        return mClosed;
+    }
+}
@@ -0,0 +1,499 @@
+package cse340.menus;
+
+import java.util.Arrays;
+
+import cse340.menus.enums.ErrorType;
+
+/**
+ * A compact description of what a menu looked like during a single trial. It holds everything
+ * needed to map a logged point (in the menu's coordinates) back to the item it would have
+ * selected: the item shapes (cells or pie sectors), which item each shape selects, where the
+ * finger went down, the dead zone around it and the display the menu was shown on.
+ *
+ * This class has no Android dependencies so that it can be used for analysis off the device.
+ */
+public class MenuLayout {
+
+    /** The menu is made of axis aligned rectangular cells */
+    public static final int CELLS = 0;
+
+    /** The menu is a pie divided into equal sectors */
+    public static final int SECTORS = 1;
+
+    /** The dead zone is a circle of the dead zone radius */
+    public static final int DEAD_ZONE_CIRCLE = 0;
+
+    /** The dead zone is an axis aligned square, the dead zone radius from its center to its sides */
+    public static final int DEAD_ZONE_SQUARE = 1;
+
+    /** Cells closer than this (in pixels) are considered to touch */
+    private static final float ADJACENT_EPSILON = 0.5f;
+
+    /** Which kind of geometry this is (CELLS or SECTORS) */
+    private final int mKind;
+
+    /** The item selected when each cell or sector is hit */
+    private final int[] mItems;
+
+    /** The cell or sector that selects each item, or -1 */
+    private final int[] mShapes;
+
+    /** Where the finger went down, relative to the menu's (0,0) */
+    private final float mOriginX, mOriginY;
+
+    /** The area around the finger in which no item is selected */
+    private final float mDeadZoneX, mDeadZoneY, mDeadZoneRadius;
+    private final int mDeadZoneShape;
+
+    /** CELLS only: left, top, right, bottom of each cell */
+    private final float[] mCells;
+
+    /** SECTORS only: the pie's center and radius */
+    private final float mCenterX, mCenterY, mRadius;
+
+    /** SECTORS only: degrees added to the angle from east before dividing it into sectors */
+    private final float mAngleOffset;
+
+    /** The display the menu was shown on */
+    private final int mWidthPixels, mHeightPixels;
+    private final float mDensity;
+
+    private MenuLayout(int kind, int[] items, float originX, float originY,
+                       float deadZoneX, float deadZoneY, float deadZoneRadius,
+                       int deadZoneShape, float[] cells,
+                       float centerX, float centerY, float radius, float angleOffset,
+                       int widthPixels, int heightPixels, float density) {
+        this.mKind = kind;
+        this.mItems = items;
+        this.mOriginX = originX;
+        this.mOriginY = originY;
+        this.mDeadZoneX = deadZoneX;
+        this.mDeadZoneY = deadZoneY;
+        this.mDeadZoneRadius = deadZoneRadius;
+        this.mDeadZoneShape = deadZoneShape;
+        this.mCells = cells;
+        this.mCenterX = centerX;
+        this.mCenterY = centerY;
+        this.mRadius = radius;
+        this.mAngleOffset = angleOffset;
+        this.mWidthPixels = widthPixels;
+        this.mHeightPixels = heightPixels;
+        this.mDensity = density;
+
+        mShapes = new int[items.length];
+        Arrays.fill(mShapes, -1);
+        for (int i = 0; i < items.length; i++) {
+            if (items[i] >= 0 && items[i] < items.length) {
+                mShapes[items[i]] = i;
+            }
+        }
+    }
+
+    /***
+     * Describes a menu made of rectangular cells.
+     *
+     * @param cells left, top, right, bottom of each cell
+     * @param items The item selected when each cell is hit
+     * @param originX Where the finger went down
+     * @param originY Where the finger went down
+     * @param deadZoneX The center of the dead zone
+     * @param deadZoneY The center of the dead zone
+     * @param deadZoneRadius The radius of the dead zone
+     * @param deadZoneShape DEAD_ZONE_CIRCLE or DEAD_ZONE_SQUARE
+     * @param widthPixels The display width
+     * @param heightPixels The display height
+     * @param density The display density
+     * @return The layout
+     */
+    public static MenuLayout cells(float[] cells, int[] items, float originX, float originY,
+                                   float deadZoneX, float deadZoneY, float deadZoneRadius,
+                                   int deadZoneShape, int widthPixels, int heightPixels,
+                                   float density) {
+        return new MenuLayout(CELLS, items, originX, originY, deadZoneX, deadZoneY,
+                deadZoneRadius, deadZoneShape, cells, 0, 0, 0, 0,
+                widthPixels, heightPixels, density);
+    }
+
+    /***
+     * Describes a pie menu. Sector i covers the angles [i, i + 1) * 360 / items.length once
+     * angleOffset has been added to the angle measured clockwise from east.
+     *
+     * @param items The item selected when each sector is hit
+     * @param centerX The center of the pie
+     * @param centerY The center of the pie
+     * @param radius The radius of the pie
+     * @param angleOffset Degrees added to the angle before finding the sector
+     * @param originX Where the finger went down
+     * @param originY Where the finger went down
+     * @param deadZoneRadius The radius of the dead zone around the center
+     * @param deadZoneShape DEAD_ZONE_CIRCLE or DEAD_ZONE_SQUARE
+     * @param widthPixels The display width
+     * @param heightPixels The display height
+     * @param density The display density
+     * @return The layout
+     */
+    public static MenuLayout sectors(int[] items, float centerX, float centerY, float radius,
+                                     float angleOffset, float originX, float originY,
+                                     float deadZoneRadius, int deadZoneShape,
+                                     int widthPixels, int heightPixels, float density) {
+        return new MenuLayout(SECTORS, items, originX, originY, centerX, centerY,
+                deadZoneRadius, deadZoneShape, null, centerX, centerY, radius, angleOffset,
+                widthPixels, heightPixels, density);
+    }
+
+    /**
+     * Finds the item a point would have selected.
+     *
+     * @param x The point relative to the menu's (0,0)
+     * @param y The point relative to the menu's (0,0)
+     * @return the item index or -1 if none.
+     */
+    public int hitTest(float x, float y) {
+        int shape = shapeAt(x, y);
+        return shape == -1 ? -1 : mItems[shape];
+    }
+
+    /**
+     * Hit tests many points at once, for example every end point of a study.
+     *
+     * @param xs The x coordinates
+     * @param ys The y coordinates
+     * @param count How many points to test
+     * @param out Receives the item index (or -1) for each point
+     */
+    public void hitTestAll(float[] xs, float[] ys, int count, int[] out) {
+        for (int i = 0; i < count; i++) {
+            out[i] = hitTest(xs[i], ys[i]);
+        }
+    }
+
+    /**
+     * Finds the cell or sector (not the item) under a point.
+     *
+     * @param x The point relative to the menu's (0,0)
+     * @param y The point relative to the menu's (0,0)
+     * @return the shape index or -1 if none.
+     */
+    public int shapeAt(float x, float y) {
+        if (inDeadZone(x, y)) {
+            return -1;
+        }
+
+        if (mKind == CELLS) {
+            for (int i = 0; i < mItems.length; i++) {
+                int c = 4 * i;
+                if (x >= mCells[c] && x < mCells[c + 2] && y >= mCells[c + 1] && y < mCells[c + 3]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        float dx = x - mCenterX;
+        float dy = y - mCenterY;
+        if (dx * dx + dy * dy > mRadius * mRadius) {
+            return -1;
+        }
+        double angle = Math.toDegrees(Math.atan2(dy, dx)) + mAngleOffset;
+        if (angle < 0) {
+            angle = 360 + angle;
+        }
+        return (int) Math.floor(mItems.length * angle / 360) % mItems.length;
+    }
+
+    /**
+     * Whether a point is in the dead zone around where the finger went down.
+     *
+     * @param x The point relative to the menu's (0,0)
+     * @param y The point relative to the menu's (0,0)
+     * @return true if the point is too close to select anything
+     */
+    public boolean inDeadZone(float x, float y) {
+        float dx = x - mDeadZoneX;
+        float dy = y - mDeadZoneY;
+        if (mDeadZoneShape == DEAD_ZONE_SQUARE) {
+            return Math.abs(dx) < mDeadZoneRadius && Math.abs(dy) < mDeadZoneRadius;
+        }
+        return dx * dx + dy * dy < mDeadZoneRadius * mDeadZoneRadius;
+    }
+
+    /**
+     * Finds the signed distance from a point to the nearest edge of an item's cell or sector:
+     * negative inside it, positive outside.
+     *
+     * @param item The item
+     * @param x The point relative to the menu's (0,0)
+     * @param y The point relative to the menu's (0,0)
+     * @return the distance in pixels, or NaN if the item isn't in the menu
+     */
+    public float distanceToItem(int item, float x, float y) {
+        int shape = item >= 0 && item < mShapes.length ? mShapes[item] : -1;
+        if (shape == -1) {
+            return Float.NaN;
+        }
+
+        if (mKind == CELLS) {
+            int c = 4 * shape;
+            float dx = Math.max(mCells[c] - x, x - mCells[c + 2]);
+            float dy = Math.max(mCells[c + 1] - y, y - mCells[c + 3]);
+            if (dx <= 0 && dy <= 0) {
+                return Math.max(dx, dy);
+            }
+            return (float) Math.hypot(Math.max(dx, 0), Math.max(dy, 0));
+        }
+
+        float dx = x - mCenterX;
+        float dy = y - mCenterY;
+        double r = Math.hypot(dx, dy);
+        double width = 360.0 / mItems.length;
+        double angle = Math.toDegrees(Math.atan2(dy, dx)) + mAngleOffset;
+        // How far the point is from the middle of the sector, in degrees
+        double fromMiddle = Math.abs(((angle - (shape + 0.5) * width) % 360 + 540) % 360 - 180);
+        double fromEdge = Math.toRadians(fromMiddle - width / 2);
+
+        if (fromEdge <= 0) {
+            // Within the sector's angles: only the arc or a straight edge can be nearer
+            double toEdge = r * Math.sin(-fromEdge);
+            return (float) (r <= mRadius ? -Math.min(mRadius - r, toEdge) : r - mRadius);
+        }
+        // Outside the sector's angles: nearest is a point on one of its straight edges
+        double along = r * Math.cos(fromEdge);
+        if (along <= 0) {
+            return (float) r;
+        }
+        if (along >= mRadius) {
+            return (float) Math.sqrt(r * r + mRadius * mRadius - 2 * r * mRadius * Math.cos(fromEdge));
+        }
+        return (float) (r * Math.sin(fromEdge));
+    }
+
+    /**
+     * Whether two items' cells or sectors are next to each other.
+     *
+     * @param item1 An item
+     * @param item2 Another item
+     * @return true if they share an edge (or overlap)
+     */
+    public boolean areAdjacent(int item1, int item2) {
+        if (item1 < 0 || item2 < 0 || item1 >= mShapes.length || item2 >= mShapes.length
+                || mShapes[item1] == -1 || mShapes[item2] == -1 || item1 == item2) {
+            return false;
+        }
+        int a = mShapes[item1];
+        int b = mShapes[item2];
+
+        if (mKind == SECTORS) {
+            int apart = Math.abs(a - b);
+            return apart == 1 || apart == mItems.length - 1;
+        }
+
+        a *= 4;
+        b *= 4;
+        // Negative gaps are overlaps
+        float xGap = Math.max(mCells[a], mCells[b]) - Math.min(mCells[a + 2], mCells[b + 2]);
+        float yGap = Math.max(mCells[a + 1], mCells[b + 1]) - Math.min(mCells[a + 3], mCells[b + 3]);
+        return xGap <= ADJACENT_EPSILON && yGap <= ADJACENT_EPSILON
+                && (xGap < -ADJACENT_EPSILON || yGap < -ADJACENT_EPSILON);
+    }
+
+    /**
+     * Works out what kind of mistake a selection was.
+     *
+     * @param prompted The item the participant was asked to select
+     * @param selected The item they selected, or -1
+     * @param x Where the finger was released, relative to the menu's (0,0)
+     * @param y Where the finger was released, relative to the menu's (0,0)
+     * @return the kind of error, or NONE if the prompted item was selected
+     */
+    public ErrorType classifyError(int prompted, int selected, float x, float y) {
+        if (selected == prompted) {
+            return ErrorType.NONE;
+        }
+        if (inDeadZone(x, y)) {
+            return ErrorType.DEAD_ZONE;
+        }
+        if (selected == -1) {
+            return ErrorType.OVERSHOOT;
+        }
+        return areAdjacent(prompted, selected) ? ErrorType.ADJACENT_SLIP : ErrorType.WRONG_FAR;
+    }
+
+    /**
+     * Finds the bounding box of a cell or sector. A sector's box leaves out the dead zone
+     * where the sectors meet.
+     *
+     * @param shape The cell or sector
+     * @param out Receives left, top, right, bottom
+     */
+    public void getShapeBounds(int shape, float[] out) {
+        if (mKind == CELLS) {
+            System.arraycopy(mCells, 4 * shape, out, 0, 4);
+            return;
+        }
+
+        double width = 360.0 / mItems.length;
+        double start = shape * width - mAngleOffset;
+        double end = start + width;
+        out[0] = out[1] = Float.POSITIVE_INFINITY;
+        out[2] = out[3] = Float.NEGATIVE_INFINITY;
+        includeSectorPoint(out, mDeadZoneRadius, start);
+        includeSectorPoint(out, mDeadZoneRadius, end);
+        includeSectorPoint(out, mRadius, start);
+        includeSectorPoint(out, mRadius, end);
+        // The arc bulges past its end points wherever it crosses an axis
+        for (double axis = Math.ceil(start / 90) * 90; axis < end; axis += 90) {
+            includeSectorPoint(out, mRadius, axis);
+        }
+    }
+
+    // Grows bounds to include the point at a distance and angle (degrees) from the center
+    private void includeSectorPoint(float[] bounds, float distance, double angle) {
+        double radians = Math.toRadians(angle);
+        float x = (float) (mCenterX + distance * Math.cos(radians));
+        float y = (float) (mCenterY + distance * Math.sin(radians));
+        bounds[0] = Math.min(bounds[0], x);
+        bounds[1] = Math.min(bounds[1], y);
+        bounds[2] = Math.max(bounds[2], x);
+        bounds[3] = Math.max(bounds[3], y);
+    }
+
+    /**
+     * Finds a point well inside a cell or sector: a cell's center, or halfway along the
+     * middle of a sector between the dead zone and the rim.
+     *
+     * @param shape The cell or sector
+     * @param out Receives x, y
+     */
+    public void getShapeCenter(int shape, float[] out) {
+        if (mKind == CELLS) {
+            int c = 4 * shape;
+            out[0] = (mCells[c] + mCells[c + 2]) / 2;
+            out[1] = (mCells[c + 1] + mCells[c + 3]) / 2;
+            return;
+        }
+
+        double radians = Math.toRadians((shape + 0.5) * 360.0 / mItems.length - mAngleOffset);
+        float distance = (mDeadZoneRadius + mRadius) / 2;
+        out[0] = (float) (mCenterX + distance * Math.cos(radians));
+        out[1] = (float) (mCenterY + distance * Math.sin(radians));
+    }
+
+    //region Getters
+    public int getKind() {
+        return mKind;
+    }
+
+    public int size() {
+        return mItems.length;
+    }
+
+    public int getDeadZoneShape() {
+        return mDeadZoneShape;
+    }
+
+    public int getItem(int shape) {
+        return mItems[shape];
+    }
+
+    public float getOriginX() {
+        return mOriginX;
+    }
+
+    public float getOriginY() {
+        return mOriginY;
+    }
+
+    public int getWidthPixels() {
+        return mWidthPixels;
+    }
+
+    public int getHeightPixels() {
+        return mHeightPixels;
+    }
+
+    public float getDensity() {
+        return mDensity;
+    }
+    //endregion
+
+    //region Serialization
+    /**
+     * Encodes this layout as space separated values (no commas, so it fits in a CSV column).
+     * The order is: kind, item count, origin x and y, dead zone x, y and radius, display width,
+     * height and density, the items, then either the cells (CELLS) or the center, radius and
+     * angle offset (SECTORS), and the dead zone shape.
+     *
+     * @return The encoded layout, readable by decode.
+     */
+    public String encode() {
+        StringBuilder s = new StringBuilder();
+        s.append(mKind).append(' ').append(mItems.length);
+        s.append(' ').append(mOriginX).append(' ').append(mOriginY);
+        s.append(' ').append(mDeadZoneX).append(' ').append(mDeadZoneY);
+        s.append(' ').append(mDeadZoneRadius);
+        s.append(' ').append(mWidthPixels).append(' ').append(mHeightPixels);
+        s.append(' ').append(mDensity);
+        for (int item : mItems) {
+            s.append(' ').append(item);
+        }
+        if (mKind == CELLS) {
+            for (float f : mCells) {
+                s.append(' ').append(f);
+            }
+        } else {
+            s.append(' ').append(mCenterX).append(' ').append(mCenterY);
+            s.append(' ').append(mRadius).append(' ').append(mAngleOffset);
+        }
+        s.append(' ').append(mDeadZoneShape);
+        return s.toString();
+    }
+
+    /**
+     * Reads a layout written by encode.
+     *
+     * @param encoded The encoded layout
+     * @return The layout
+     */
+    public static MenuLayout decode(String encoded) {
+        String[] t = encoded.trim().split(" ");
+        try {
+            int i = 0;
+            int kind = Integer.parseInt(t[i++]);
+            int[] items = new int[Integer.parseInt(t[i++])];
+            float originX = Float.parseFloat(t[i++]);
+            float originY = Float.parseFloat(t[i++]);
+            float deadZoneX = Float.parseFloat(t[i++]);
+            float deadZoneY = Float.parseFloat(t[i++]);
+            float deadZoneRadius = Float.parseFloat(t[i++]);
+            int widthPixels = Integer.parseInt(t[i++]);
+            int heightPixels = Integer.parseInt(t[i++]);
+            float density = Float.parseFloat(t[i++]);
+            for (int j = 0; j < items.length; j++) {
+                items[j] = Integer.parseInt(t[i++]);
+            }
+            if (kind == CELLS) {
+                float[] cells = new float[4 * items.length];
+                for (int j = 0; j < cells.length; j++) {
+                    cells[j] = Float.parseFloat(t[i++]);
+                }
+                return cells(cells, items, originX, originY, deadZoneX, deadZoneY,
+                        deadZoneRadius, readDeadZoneShape(t, i), widthPixels, heightPixels,
+                        density);
+            }
+            float centerX = Float.parseFloat(t[i++]);
+            float centerY = Float.parseFloat(t[i++]);
+            float radius = Float.parseFloat(t[i++]);
+            float angleOffset = Float.parseFloat(t[i++]);
+            return sectors(items, centerX, centerY, radius, angleOffset, originX, originY,
+                    deadZoneRadius, readDeadZoneShape(t, i), widthPixels, heightPixels, density);
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("malformed layout: " + encoded, e);
+        }
+    }
+
+    // Layouts logged before dead zones had shapes end before it, and were circles
+    private static int readDeadZoneShape(String[] t, int i) {
+        return i < t.length ? Integer.parseInt(t[i]) : DEAD_ZONE_CIRCLE;
+    }
+    //endregion
+}
@@ -0,0 +1,104 @@
+package cse340.menus;
+
+import cse340.menus.enums.CommitType;
+
+/**
+ * The options picked from the activity's menu that change how menus are set up. They can
+ * change between trials, so they are applied to each trial's menu before it is prepared
+ * (see MenuRegistry.Entry.configure). Each menu type only uses the adaptive, marking and
+ * dead zone options if its registry entry supports them.
+ */
+public class MenuOptions {
+
+    /** How menu selections are committed */
+    private CommitType mCommitType = CommitType.RELEASE;
+
+    /** Whether menus handle moves once per display frame */
+    private boolean mFrameAligned;
+
+    /** Whether menus that support it should be reordered by the SelectionModel */
+    private boolean mAdaptive;
+
+    /** Whether menus that support it should be marking menus */
+    private boolean mMarking;
+
+    /** Whether menus that support it use square dead zones, matching their cells */
+    private boolean mSquareDeadZones;
+
+    public MenuOptions() {
+    }
+
+    /**
+     * Copy constructor, for remembering the options a menu was set up with.
+     * @param options The options to copy
+     */
+    public MenuOptions(MenuOptions options) {
+        mCommitType = options.mCommitType;
+        mFrameAligned = options.mFrameAligned;
+        mAdaptive = options.mAdaptive;
+        mMarking = options.mMarking;
+        mSquareDeadZones = options.mSquareDeadZones;
+    }
+
+    //region Getters and Setters
+    public CommitType getCommitType() {
+        return mCommitType;
+    }
+
+    public void setCommitType(CommitType commitType) {
+        mCommitType = commitType;
+    }
+
+    public boolean isFrameAligned() {
+        return mFrameAligned;
+    }
+
+    public void setFrameAligned(boolean frameAligned) {
+        mFrameAligned = frameAligned;
+    }
+
+    public boolean isAdaptive() {
+        return mAdaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        mAdaptive = adaptive;
+    }
+
+    public boolean isMarking() {
+        return mMarking;
+    }
+
+    public void setMarking(boolean marking) {
+        mMarking = marking;
+    }
+
+    public boolean isSquareDeadZones() {
+        return mSquareDeadZones;
+    }
+
+    public void setSquareDeadZones(boolean squareDeadZones) {
+        mSquareDeadZones = squareDeadZones;
+    }
+    //endregion
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof MenuOptions)) {
+            return false;
+        }
+        MenuOptions options = (MenuOptions) o;
+        return mCommitType == options.mCommitType && mFrameAligned == options.mFrameAligned
+                && mAdaptive == options.mAdaptive && mMarking == options.mMarking
+                && mSquareDeadZones == options.mSquareDeadZones;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = mCommitType.hashCode();
+        hash = 31 * hash + (mFrameAligned ? 1 : 0);
+        hash = 31 * hash + (mAdaptive ? 1 : 0);
+        hash = 31 * hash + (mMarking ? 1 : 0);
+        return 31 * hash + (mSquareDeadZones ? 1 : 0);
+    }
+}
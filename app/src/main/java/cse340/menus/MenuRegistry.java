@@ -0,0 +1,245 @@
+package cse340.menus;
+
+import android.content.Context;
+import android.support.annotation.StringRes;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import cse340.menus.enums.MenuType;
+import cse340.menus.views.CustomMenuView;
+import cse340.menus.views.MenuExperimentView;
+import cse340.menus.views.NormalMenuView;
+import cse340.menus.views.PieMenuView;
+
+/**
+ * The menus the app knows how to build, keyed by MenuType. Each type has an Entry saying how
+ * to build it and which options it supports. The activities and the experiment design only
+ * go through the registry, so a new kind of menu needs a MenuType and an entry in BUILT_IN
+ * (or a register call), and nothing else.
+ *
+ * Entries are kept in an array indexed by the type's ordinal, so creating a menu is an array
+ * lookup and a constructor call.
+ */
+public final class MenuRegistry {
+
+    /** Builds a menu showing some items */
+    public interface Factory {
+        MenuExperimentView create(Context context, List<String> items);
+    }
+
+    /** Applies the options a type of menu has beyond the ones every menu has */
+    public interface Configurator {
+        void configure(MenuExperimentView view, MenuOptions options);
+    }
+
+    /**
+     * How to build one type of menu and what it supports. Set up an entry before it is
+     * registered; it shouldn't change afterwards.
+     */
+    public static final class Entry {
+        private final MenuType mType;
+        private final @StringRes int mName;
+        private final Factory mFactory;
+
+        /** Whether the SelectionModel may reorder the menu's items */
+        private boolean mAdaptive;
+
+        /** Whether the menu may use a square dead zone */
+        private boolean mSquareDeadZone;
+
+        /** Applies the menu's own options, or null if it has none */
+        private Configurator mConfigurator;
+
+        /**
+         * Constructor
+         *
+         * @param type The type of menu
+         * @param name The name to show for it
+         * @param factory Builds menus of the type
+         */
+        public Entry(MenuType type, @StringRes int name, Factory factory) {
+            mType = type;
+            mName = name;
+            mFactory = factory;
+        }
+
+        /**
+         * Lets adaptive sessions put the most frequently and recently selected items first.
+         * @return this entry
+         */
+        public Entry adaptive() {
+            mAdaptive = true;
+            return this;
+        }
+
+        /**
+         * Lets the menu use a square dead zone when square dead zones are on, for menus whose
+         * items are cells.
+         * @return this entry
+         */
+        public Entry squareDeadZone() {
+            mSquareDeadZone = true;
+            return this;
+        }
+
+        /**
+         * Sets what applies the menu's own options.
+         * @param configurator Called every time a menu of the type is shown
+         * @return this entry
+         */
+        public Entry configurator(Configurator configurator) {
+            mConfigurator = configurator;
+            return this;
+        }
+
+        public MenuType getType() {
+            return mType;
+        }
+
+        public @StringRes int getName() {
+            return mName;
+        }
+
+        public boolean supportsAdaptive() {
+            return mAdaptive;
+        }
+
+        /**
+         * Gets the shape of the menu's dead zone.
+         * @param options The current options
+         * @return MenuLayout.DEAD_ZONE_CIRCLE or MenuLayout.DEAD_ZONE_SQUARE
+         */
+        public int getDeadZoneShape(MenuOptions options) {
+            return mSquareDeadZone && options.isSquareDeadZones()
+                    ? MenuLayout.DEAD_ZONE_SQUARE : MenuLayout.DEAD_ZONE_CIRCLE;
+        }
+
+        /**
+         * Applies the options this type of menu supports to a menu about to be shown:
+         * its dead zone, and whatever its configurator sets. Adaptive ordering is left to
+         * the caller, which has the SelectionModel (see supportsAdaptive).
+         *
+         * @param view A menu of this type
+         * @param options The current options
+         */
+        public void configure(MenuExperimentView view, MenuOptions options) {
+            view.setDeadZone(getDeadZoneShape(options), view.getDeadZoneRadius());
+            if (mConfigurator != null) {
+                mConfigurator.configure(view, options);
+            }
+        }
+    }
+
+    /** The menus that come with the app, in the order they are offered */
+    private static final Entry[] BUILT_IN = {
+            new Entry(MenuType.NORMAL, R.string.menu_normal, NormalMenuView::new)
+                    .adaptive()
+                    .squareDeadZone(),
+            new Entry(MenuType.PIE, R.string.menu_pie, PieMenuView::new)
+                    .adaptive()
+                    .configurator((view, options) ->
+                            ((PieMenuView) view).setMarkingMode(options.isMarking())),
+            new Entry(MenuType.CUSTOM, R.string.menu_custom, CustomMenuView::new)
+                    .squareDeadZone(),
+    };
+
+    /** The entry of each type, indexed by ordinal */
+    private static final Entry[] ENTRIES = new Entry[MenuType.values().length];
+
+    /** The registered types, in the order they were registered */
+    private static final List<MenuType> TYPES = new ArrayList<>();
+
+    static {
+        for (Entry entry : BUILT_IN) {
+            register(entry);
+        }
+    }
+
+    private MenuRegistry() {
+    }
+
+    /**
+     * Adds a type of menu, or replaces its entry.
+     *
+     * @param entry How to build the type and what it supports
+     */
+    public static synchronized void register(Entry entry) {
+        int ordinal = entry.getType().ordinal();
+        if (ENTRIES[ordinal] == null) {
+            TYPES.add(entry.getType());
+        }
+        ENTRIES[ordinal] = entry;
+    }
+
+    /**
+     * @return every registered type of menu
+     */
+    public static List<MenuType> getTypes() {
+        return Collections.unmodifiableList(TYPES);
+    }
+
+    /**
+     * Gets the entry of a type of menu.
+     *
+     * @param type The type of menu
+     * @return its entry
+     */
+    public static Entry get(MenuType type) {
+        Entry entry = ENTRIES[type.ordinal()];
+        if (entry == null) {
+            throw new IllegalStateException("no menu registered for " + type);
+        }
+        return entry;
+    }
+
+    /**
+     * @return the string resource naming a type of menu
+     */
+    public static @StringRes int getName(MenuType type) {
+        return get(type).getName();
+    }
+
+    /**
+     * Builds a menu.
+     *
+     * @param type The type of menu
+     * @param context The context for the view
+     * @param items The items to show
+     * @return the new menu
+     */
+    public static MenuExperimentView create(MenuType type, Context context, List<String> items) {
+        return get(type).mFactory.create(context, items);
+    }
+
+    /**
+     * Builds the menu for a trial.
+     *
+     * @param context The context for the view
+     * @param trial The trial, which gives the type of menu and its items
+     * @return the new menu, recording into the trial
+     */
+    public static MenuExperimentView create(Context context, ExperimentTrial trial) {
+        MenuExperimentView view = create(trial.getMenu(), context, trial.getMenuContents());
+        view.setTrial(trial);
+        return view;
+    }
+
+    /**
+     * Builds one menu of every registered type and prepares it (see
+     * MenuExperimentView.prepare), so none of that work is left for when it is shown.
+     *
+     * @param context The context for the views
+     * @param items Items to show in the menus
+     * @return the menus, indexed by their type's ordinal (null for unregistered types)
+     */
+    public static MenuExperimentView[] prewarm(Context context, List<String> items) {
+        MenuExperimentView[] views = new MenuExperimentView[MenuType.values().length];
+        for (MenuType type : getTypes()) {
+            views[type.ordinal()] = create(type, context, items);
+            views[type.ordinal()].prepare();
+        }
+        return views;
+    }
+}
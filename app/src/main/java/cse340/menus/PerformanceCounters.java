@@ -0,0 +1,137 @@
+package cse340.menus;
+
+import android.os.Debug;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide performance counters for the menus, shown by PerformanceOverlay in test mode.
+ * The touch and draw paths update them and the overlay reads them from other threads, so
+ * every counter is an atomic and nothing ever waits on a lock. While the counters are
+ * disabled (the default) the menus skip timing altogether.
+ */
+public final class PerformanceCounters {
+
+    /** Whether the menus should time themselves */
+    private static volatile boolean sEnabled;
+
+    /** Hit tests: how many, their total time, and the latest one's time */
+    private static final AtomicLong sHitTests = new AtomicLong();
+    private static final AtomicLong sHitTestNanos = new AtomicLong();
+    private static final AtomicLong sLastHitTestNanos = new AtomicLong();
+
+    /** How long the active menu's latest draw took */
+    private static final AtomicLong sLastDrawNanos = new AtomicLong();
+
+    /** How long the latest frame took, from FrameMetrics */
+    private static final AtomicLong sLastFrameNanos = new AtomicLong();
+
+    /** The time of the input that last changed the highlight, until a frame picks it up */
+    private static final AtomicLong sPendingHighlightMillis = new AtomicLong();
+
+    /** How long the latest highlight change took to reach the screen */
+    private static final AtomicLong sLastLatencyMillis = new AtomicLong();
+
+    /** Allocations: the count when the current gesture started, and during the last gesture */
+    private static final AtomicLong sGestureStartAllocs = new AtomicLong();
+    private static final AtomicLong sLastGestureAllocs = new AtomicLong();
+
+    private PerformanceCounters() {
+    }
+
+    /**
+     * Turn the counters on or off. Allocation counting only runs while they are on.
+     * @param enabled true to start timing the menus
+     */
+    @SuppressWarnings("deprecation")
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+        if (enabled) {
+            Debug.startAllocCounting();
+        } else {
+            Debug.stopAllocCounting();
+        }
+    }
+
+    public static boolean isEnabled() {
+        return sEnabled;
+    }
+
+    //region Touch and draw paths
+    public static void recordHitTest(long nanos) {
+        sHitTests.incrementAndGet();
+        sHitTestNanos.addAndGet(nanos);
+        sLastHitTestNanos.set(nanos);
+    }
+
+    public static void recordDraw(long nanos) {
+        sLastDrawNanos.set(nanos);
+    }
+
+    public static void recordFrame(long nanos) {
+        sLastFrameNanos.set(nanos);
+    }
+
+    /**
+     * Called when an input event changes the highlight.
+     * @param eventTimeMillis The event's time (uptime)
+     */
+    public static void recordHighlightChange(long eventTimeMillis) {
+        sPendingHighlightMillis.set(eventTimeMillis);
+    }
+
+    /**
+     * Called at the start of every frame while the overlay is shown. If the highlight changed
+     * since the last frame, this frame draws it.
+     * @param frameTimeMillis The frame's start time (uptime)
+     */
+    public static void onFrame(long frameTimeMillis) {
+        long input = sPendingHighlightMillis.getAndSet(0);
+        if (input != 0) {
+            // The frame starts after the input, and is on screen once it has been rendered
+            sLastLatencyMillis.set(frameTimeMillis - input + sLastFrameNanos.get() / 1000000);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void startGesture() {
+        sGestureStartAllocs.set(Debug.getThreadAllocCount());
+    }
+
+    @SuppressWarnings("deprecation")
+    public static void endGesture() {
+        sLastGestureAllocs.set(Debug.getThreadAllocCount() - sGestureStartAllocs.get());
+    }
+    //endregion
+
+    //region Getters
+    public static long getHitTests() {
+        return sHitTests.get();
+    }
+
+    public static long getMeanHitTestNanos() {
+        long count = sHitTests.get();
+        return count == 0 ? 0 : sHitTestNanos.get() / count;
+    }
+
+    public static long getLastHitTestNanos() {
+        return sLastHitTestNanos.get();
+    }
+
+    public static long getLastDrawNanos() {
+        return sLastDrawNanos.get();
+    }
+
+    public static long getLastFrameNanos() {
+        return sLastFrameNanos.get();
+    }
+
+    public static long getLastLatencyMillis() {
+        return sLastLatencyMillis.get();
+    }
+
+    public static long getLastGestureAllocs() {
+        return sLastGestureAllocs.get();
+    }
+    //endregion
+}
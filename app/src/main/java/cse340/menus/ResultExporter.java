@@ -0,0 +1,283 @@
+package cse340.menus;
+
+import android.database.Cursor;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Packs the results written by ShardedResultStore into compressed zip archives that are quick
+ * to pull off the device. Each export only contains the shards that were not in an earlier
+ * export, so the time it takes depends on how much new data there is, not on how much has
+ * been recorded. Sessions that were over when they were last exported are skipped without
+ * being read.
+ *
+ * A session is over unless it is the one being recorded. Its shards are found by listing its
+ * directory, so a session the app never got to close (it crashed or was killed) is exported
+ * in full even if its index is stale or missing. Of the session being recorded, only the
+ * shards its index marks complete are exported.
+ *
+ * Every archive holds a manifest.csv listing its shards with their row counts, sizes and
+ * CRC-32 and SHA-256 checksums. If there is a TrialStore, the archive also holds a
+ * document_trials.csv of the trials stored since the last export that are in no shard: the
+ * sessions written to a folder picked by the user. Those trials aren't in the shards, so
+ * aggregating an unpacked archive counts every trial once.
+ */
+public class ResultExporter {
+
+    /**
+     * Lists what has already been exported, one path per line: shards, sessions (ending in
+     * '/') that were over once all their shards were exported, and TRIALS_PREFIX followed by
+     * the id of the last trial exported from the TrialStore
+     */
+    private static final String STATE_FILE = "exported.txt";
+
+    /** The name of the manifest inside each archive */
+    private static final String MANIFEST = "manifest.csv";
+
+    /** The name of the trials exported from the TrialStore inside each archive */
+    private static final String TRIALS = "document_trials.csv";
+
+    /** Starts the state file lines recording the last trial exported */
+    private static final String TRIALS_PREFIX = "trials:";
+
+    /** Matches the shards in a session's directory */
+    private static final Pattern SHARD = Pattern.compile("results_\\d+\\.csv");
+
+    /** The directory holding every participant's results */
+    private final File mResultDirectory;
+
+    /** Where archives are written */
+    private final File mExportDirectory;
+
+    /** Where every trial is indexed, or null */
+    private final TrialStore mTrialStore;
+
+    /**
+     * Constructor
+     *
+     * @param resultDirectory The directory ShardedResultStore writes to
+     * @param exportDirectory Where the archives should go
+     * @param trialStore Where every trial is indexed, or null to only export shards
+     */
+    public ResultExporter(File resultDirectory, File exportDirectory, TrialStore trialStore) {
+        mResultDirectory = resultDirectory;
+        mExportDirectory = exportDirectory;
+        mTrialStore = trialStore;
+    }
+
+    /**
+     * Writes an archive of the shards added since the last export. This does I/O and
+     * should not be called on the UI thread.
+     *
+     * @param activeSession The directory of the session being recorded, or null if none is
+     * @return the archive, or null if there was nothing new to export
+     * @throws IOException if the archive couldn't be written
+     */
+    public File export(File activeSession) throws IOException {
+        File stateFile = new File(mResultDirectory, STATE_FILE);
+        Set<String> exported = readState(stateFile);
+
+        long exportTime = System.currentTimeMillis();
+        if (!mExportDirectory.isDirectory() && !mExportDirectory.mkdirs()) {
+            throw new IOException("Couldn't create " + mExportDirectory);
+        }
+        File archive = new File(mExportDirectory, "results_" + exportTime + ".zip");
+        StringBuilder manifest = new StringBuilder("file, rows, bytes, crc32, sha256\n");
+        StringBuilder newlyExported = new StringBuilder();
+        int count = 0;
+        long lastTrial = 0;
+
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            zip.setLevel(Deflater.BEST_COMPRESSION);
+            byte[] buffer = new byte[64 * 1024];
+
+            for (File participant : listDirectories(mResultDirectory)) {
+                for (File session : listDirectories(participant)) {
+                    String sessionPath = participant.getName() + "/" + session.getName() + "/";
+                    if (exported.contains(sessionPath)) {
+                        continue;
+                    }
+                    boolean over = !session.equals(activeSession);
+                    for (String shard : listShards(session, over)) {
+                        String path = sessionPath + shard;
+                        if (exported.contains(path)) {
+                            continue;
+                        }
+                        manifest.append(path).append(',')
+                                .append(pack(new File(session, shard), path, zip, buffer))
+                                .append('\n');
+                        newlyExported.append(path).append('\n');
+                        count++;
+                    }
+                    if (over) {
+                        newlyExported.append(sessionPath).append('\n');
+                    }
+                }
+            }
+
+            zip.putNextEntry(new ZipEntry(MANIFEST));
+            zip.write(manifest.toString().getBytes("UTF-8"));
+            zip.closeEntry();
+
+            Cursor documentTrials = mTrialStore != null
+                    ? mTrialStore.queryNotInShards(lastExportedTrial(exported)) : null;
+            if (documentTrials != null && documentTrials.getCount() == 0) {
+                documentTrials.close();
+            } else if (documentTrials != null) {
+                zip.putNextEntry(new ZipEntry(TRIALS));
+                // Not closed, that would close the archive
+                Writer trials = new BufferedWriter(
+                        new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+                lastTrial = TrialStore.exportCSV(documentTrials, trials);
+                trials.flush();
+                zip.closeEntry();
+                newlyExported.append(TRIALS_PREFIX).append(lastTrial).append('\n');
+            }
+        }
+
+        if (count == 0 && lastTrial == 0) {
+            archive.delete();
+        }
+
+        // Only remember the shards once the archive is safely written
+        if (newlyExported.length() > 0) {
+            try (Writer writer = new BufferedWriter(new FileWriter(stateFile, true))) {
+                writer.append(newlyExported);
+            }
+        }
+        if (count == 0 && lastTrial == 0) {
+            return null;
+        }
+        Log.i(ExperimentSession.TAG, "Exported " + count + " shards and the trials up to "
+                + lastTrial + " to " + archive);
+        return archive;
+    }
+
+    // The id of the last trial exported from the TrialStore, or 0 if none was
+    private static long lastExportedTrial(Set<String> exported) {
+        long last = 0;
+        for (String line : exported) {
+            if (line.startsWith(TRIALS_PREFIX)) {
+                last = Math.max(last, Long.parseLong(line.substring(TRIALS_PREFIX.length())));
+            }
+        }
+        return last;
+    }
+
+    // Finds a session's shards that can be exported: all of them once the session is over,
+    // otherwise the ones its index marks complete
+    private static List<String> listShards(File session, boolean over) throws IOException {
+        List<String> shards = new ArrayList<>();
+        if (over) {
+            String[] names = session.list((directory, name) -> SHARD.matcher(name).matches());
+            if (names != null) {
+                Collections.addAll(shards, names);
+                Collections.sort(shards);
+            }
+            return shards;
+        }
+
+        File index = new File(session, ShardedResultStore.INDEX_FILE);
+        if (!index.isFile()) {
+            return shards;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(index))) {
+            reader.readLine(); // header
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // shard, rows, bytes, complete
+                String[] columns = line.split(",");
+                if (Boolean.parseBoolean(columns[3])) {
+                    shards.add(columns[0]);
+                }
+            }
+        }
+        return shards;
+    }
+
+    // Streams one shard into the archive, returning its "rows, bytes, crc32, sha256" for the
+    // manifest. Rows are counted from the shard itself, since the index of a session that
+    // wasn't closed may be out of date.
+    private static String pack(File shard, String path, ZipOutputStream zip, byte[] buffer)
+            throws IOException {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        CRC32 crc = new CRC32();
+        long bytes = 0;
+        long lines = 0;
+
+        zip.putNextEntry(new ZipEntry(path));
+        try (InputStream in = new FileInputStream(shard)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                zip.write(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                sha256.update(buffer, 0, read);
+                bytes += read;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] == '\n') {
+                        lines++;
+                    }
+                }
+            }
+        }
+        zip.closeEntry();
+
+        StringBuilder s = new StringBuilder();
+        // Every line but the header is a row
+        s.append(Math.max(lines - 1, 0)).append(',');
+        s.append(bytes).append(',');
+        s.append(String.format(Locale.US, "%08x", crc.getValue())).append(',');
+        for (byte b : sha256.digest()) {
+            s.append(String.format(Locale.US, "%02x", b));
+        }
+        return s.toString();
+    }
+
+    private static Set<String> readState(File stateFile) throws IOException {
+        Set<String> exported = new HashSet<>();
+        if (stateFile.isFile()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(stateFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    exported.add(line);
+                }
+            }
+        }
+        return exported;
+    }
+
+    private static File[] listDirectories(File directory) {
+        File[] directories = directory.listFiles(File::isDirectory);
+        return directories != null ? directories : new File[0];
+    }
+}
@@ -0,0 +1,45 @@
+package cse340.menus;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Somewhere the rows of a session's results are written to. Each sink holds the results of
+ * one session, and writes the CSV header (ExperimentSession.CSV_HEADER) itself.
+ */
+public interface ResultSink {
+
+    /**
+     * Appends a row. The row may be buffered until flush or close is called.
+     *
+     * @param row The row to write, without a line break
+     * @throws IOException if the row couldn't be written
+     */
+    void append(String row) throws IOException;
+
+    /**
+     * Writes any buffered rows out.
+     *
+     * @throws IOException if the rows couldn't be written
+     */
+    void flush() throws IOException;
+
+    /**
+     * Writes any buffered rows out and marks the session's results complete. Nothing more
+     * should be appended afterwards.
+     */
+    void close();
+
+    /***
+     * Deletes this session's results. Other sessions are not touched.
+     */
+    void delete();
+
+    /**
+     * @return the directory in the app's storage holding this session's results, or null if
+     * they are written somewhere else
+     */
+    default File getDirectory() {
+        return null;
+    }
+}
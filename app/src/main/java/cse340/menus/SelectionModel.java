@@ -0,0 +1,283 @@
+package cse340.menus;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * An online model of how often, and how recently, each menu item has been selected. It is used
+ * by adaptive menus to put the items the participant is most likely to want first.
+ *
+ * Each selection adds a weight that grows by 1 / DECAY per selection, which is the same as
+ * decaying every older weight by DECAY without having to touch them. When the weights get too
+ * large they are all scaled back down, so an update is O(1) amortized.
+ *
+ * Items are keyed by their text in an open addressing table. Loading, updates and saving to
+ * disk happen on a background thread so they stay off the touch path, and the file is read
+ * and written without holding the lock rank takes. Until the saved model has been loaded,
+ * rank returns null rather than ranking against an empty model.
+ *
+ * There is one model per process (see get), so both activities read and update the same
+ * weights and neither overwrites the other's file.
+ */
+public class SelectionModel {
+
+    /** How much an old selection counts compared to the one after it */
+    private static final float DECAY = 0.9f;
+
+    /** Rescale all weights once the next weight would be bigger than this */
+    private static final float MAX_INCREMENT = 1e30f;
+
+    /**
+     * Where the model is stored, relative to the app's files directory. The first version
+     * (selection_model.bin) only kept hash codes, which can't be turned back into items.
+     */
+    private static final String FILE_NAME = "selection_model.v2.bin";
+
+    /** How long the background thread waits for more work before it exits */
+    private static final long IDLE_SECONDS = 5;
+
+    /** The process's model, created by the first call to get */
+    private static SelectionModel sInstance;
+
+    /** Open addressing table from item to weight, null keys are empty slots */
+    private String[] mKeys;
+    private float[] mWeights;
+    private int mSize;
+
+    /** The weight the next selection will add */
+    private float mIncrement = 1;
+
+    /** The file the model is persisted to */
+    private final File mFile;
+
+    /** Counted down once the saved model has been loaded (or there was none) */
+    private final CountDownLatch mLoaded = new CountDownLatch(1);
+
+    /**
+     * Updates and saving happen here so they don't block the UI thread. Its one thread
+     * exits when it has been idle for a while, so it doesn't outlive the activities.
+     */
+    private final ThreadPoolExecutor mExecutor = new ThreadPoolExecutor(1, 1,
+            IDLE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>());
+
+    /**
+     * Gets the process's model, loading the one saved by a previous run the first time.
+     *
+     * @param context Any context of the app
+     * @return the model
+     */
+    public static synchronized SelectionModel get(Context context) {
+        if (sInstance == null) {
+            sInstance = new SelectionModel(context.getApplicationContext().getFilesDir());
+        }
+        return sInstance;
+    }
+
+    /**
+     * Constructor. Loads the model saved by a previous session, if any.
+     *
+     * @param directory The directory to store the model in
+     */
+    private SelectionModel(File directory) {
+        mFile = new File(directory, FILE_NAME);
+        allocate(16);
+        mExecutor.allowCoreThreadTimeOut(true);
+        mExecutor.execute(this::load);
+    }
+
+    /**
+     * Records that an item was selected. This returns immediately, the model is updated
+     * and saved in the background.
+     *
+     * @param item The item that was selected
+     */
+    public void recordSelection(String item) {
+        mExecutor.execute(() -> {
+            synchronized (this) {
+                add(item);
+            }
+            save();
+        });
+    }
+
+    /**
+     * Waits until the model saved by a previous run has been loaded. This can wait for
+     * disk IO and should not be called on the UI thread.
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void awaitLoaded() throws InterruptedException {
+        mLoaded.await();
+    }
+
+    /**
+     * Orders items from most to least likely to be selected. Items that score the same keep
+     * their original order.
+     *
+     * @param items The items in their original order
+     * @return order[i] is the index in items of the item to show in position i, or null if
+     * the saved model hasn't been loaded yet
+     */
+    public synchronized int[] rank(List<String> items) {
+        if (mLoaded.getCount() > 0) {
+            return null;
+        }
+        int n = items.size();
+        int[] order = new int[n];
+        float[] scores = new float[n];
+        for (int i = 0; i < n; i++) {
+            float score = weight(items.get(i));
+            // insertion sort, menus are small
+            int j = i;
+            while (j > 0 && scores[j - 1] < score) {
+                order[j] = order[j - 1];
+                scores[j] = scores[j - 1];
+                j--;
+            }
+            order[j] = i;
+            scores[j] = score;
+        }
+        return order;
+    }
+
+    //region Table
+    private void allocate(int capacity) {
+        mKeys = new String[capacity];
+        mWeights = new float[capacity];
+        mSize = 0;
+    }
+
+    // Finds the slot holding key, or the empty slot where it should go
+    private int slot(String key) {
+        int mask = mKeys.length - 1;
+        int i = (key.hashCode() * 0x9E3779B9) >>> 16 & mask;
+        while (mKeys[i] != null && !mKeys[i].equals(key)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+
+    private float weight(String key) {
+        int i = slot(key);
+        return mKeys[i] != null ? mWeights[i] : 0;
+    }
+
+    private void put(String key, float weight) {
+        int i = slot(key);
+        if (mKeys[i] == null) {
+            mKeys[i] = key;
+            mSize++;
+        }
+        mWeights[i] = weight;
+
+        if (2 * mSize > mKeys.length) {
+            String[] keys = mKeys;
+            float[] weights = mWeights;
+            allocate(2 * keys.length);
+            for (int j = 0; j < keys.length; j++) {
+                if (keys[j] != null) {
+                    put(keys[j], weights[j]);
+                }
+            }
+        }
+    }
+
+    private void add(String key) {
+        put(key, weight(key) + mIncrement);
+        mIncrement /= DECAY;
+
+        if (mIncrement > MAX_INCREMENT) {
+            for (int i = 0; i < mWeights.length; i++) {
+                mWeights[i] /= mIncrement;
+            }
+            mIncrement = 1;
+        }
+    }
+    //endregion
+
+    //region Persistence
+    // Reads the file without the lock, then fills the table with what was read
+    private void load() {
+        try {
+            if (!mFile.isFile()) {
+                return;
+            }
+            float increment;
+            String[] keys;
+            float[] weights;
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(mFile)))) {
+                increment = in.readFloat();
+                int size = in.readInt();
+                keys = new String[size];
+                weights = new float[size];
+                for (int i = 0; i < size; i++) {
+                    keys[i] = in.readUTF();
+                    weights[i] = in.readFloat();
+                }
+            } catch (IOException e) {
+                Log.e(ExperimentSession.TAG, "Failed to load selection model", e);
+                return;
+            }
+            synchronized (this) {
+                mIncrement = increment;
+                for (int i = 0; i < keys.length; i++) {
+                    put(keys[i], weights[i]);
+                }
+            }
+        } finally {
+            mLoaded.countDown();
+        }
+    }
+
+    // Copies the table under the lock, then writes the copy without it
+    private void save() {
+        float increment;
+        String[] keys;
+        float[] weights;
+        synchronized (this) {
+            increment = mIncrement;
+            keys = mKeys.clone();
+            weights = mWeights.clone();
+        }
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            int size = 0;
+            for (String key : keys) {
+                if (key != null) {
+                    size++;
+                }
+            }
+            out.writeFloat(increment);
+            out.writeInt(size);
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i] != null) {
+                    out.writeUTF(keys[i]);
+                    out.writeFloat(weights[i]);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(ExperimentSession.TAG, "Failed to save selection model", e);
+            return;
+        }
+        if (!tmp.renameTo(mFile)) {
+            Log.e(ExperimentSession.TAG, "Failed to save selection model");
+        }
+    }
+    //endregion
+}
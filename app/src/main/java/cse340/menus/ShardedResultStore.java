@@ -0,0 +1,244 @@
+package cse340.menus;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Stores the results of one session in their own directory, so that a bad write or a reset
+ * can only affect that session:
+ *
+ *   root/participant_[id]/session_[id]/results_000.csv, results_001.csv, ..., index.csv
+ *
+ * A results file (shard) is rotated once it grows past MAX_SHARD_BYTES. Every shard starts
+ * with the CSV header, so each one can be read on its own. Shards are UTF-8. index.csv lists
+ * the session's shards with their row and byte counts, and whether they are complete (no
+ * longer being written to). It is rewritten whenever a shard is opened, so it exists and
+ * lists every shard even if the app dies before the session is closed, and again when the
+ * session is closed.
+ *
+ * Where a shard lives only depends on the participant, session and shard number, so neither
+ * appending nor finding a shard depends on how many sessions the device has recorded.
+ *
+ * The current shard is kept open and buffered; rows reach the file when flush() is called.
+ */
+public class ShardedResultStore implements ResultSink {
+
+    /** Start a new shard once the current one is bigger than this */
+    private static final long MAX_SHARD_BYTES = 1 << 20;
+
+    /** The name of the file listing the session's shards */
+    public static final String INDEX_FILE = "index.csv";
+
+    /** The directory holding this session's shards */
+    private final File mDirectory;
+
+    /** The first line of every shard */
+    private final String mHeader;
+
+    /** Row and byte counts of each shard, the last one is the shard being written */
+    private final List<Integer> mRowCounts = new ArrayList<>();
+    private final List<Long> mByteCounts = new ArrayList<>();
+
+    /** Whether close() or delete() has been called */
+    private boolean mClosed;
+    private boolean mDeleted;
+
+    /** The open shard, or null before the first row */
+    private Writer mWriter;
+
+    /**
+     * Constructor. Creates the session's directory.
+     *
+     * @param root The directory holding every participant's results
+     * @param participantNum The participant doing the session
+     * @param sessionId Identifies the session, unique for the participant
+     * @param header The CSV header written at the start of every shard
+     */
+    public ShardedResultStore(File root, int participantNum, long sessionId, String header) {
+        mDirectory = sessionDirectory(root, participantNum, sessionId);
+        mHeader = header;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IllegalStateException("Couldn't create " + mDirectory);
+        }
+    }
+
+    /**
+     * Finds where a session's shards are stored.
+     *
+     * @param root The directory holding every participant's results
+     * @param participantNum The participant
+     * @param sessionId The session
+     * @return the session's directory
+     */
+    public static File sessionDirectory(File root, int participantNum, long sessionId) {
+        return new File(new File(root, "participant_" + participantNum), "session_" + sessionId);
+    }
+
+    /**
+     * Finds one of the session's shards.
+     *
+     * @param shard The shard number, counting from 0
+     * @return the shard's file
+     */
+    public File getShard(int shard) {
+        return new File(mDirectory, String.format(Locale.US, "results_%03d.csv", shard));
+    }
+
+    /**
+     * @return how many rows have been written to a shard
+     */
+    public int getRowCount(int shard) {
+        return mRowCounts.get(shard);
+    }
+
+    /**
+     * @return how many shards the session has
+     */
+    public int getShardCount() {
+        return mRowCounts.size();
+    }
+
+    @Override
+    public File getDirectory() {
+        return mDirectory;
+    }
+
+    /**
+     * Appends a row to the current shard, starting a new shard first if it is full.
+     *
+     * @param row The row to write, without a line break
+     * @throws IOException if the row couldn't be written
+     */
+    @Override
+    public void append(String row) throws IOException {
+        int current = mRowCounts.size() - 1;
+        if (current < 0 || mByteCounts.get(current) > MAX_SHARD_BYTES) {
+            if (current >= 0) {
+                mWriter.close();
+            }
+            current++;
+            mWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(getShard(current), true), StandardCharsets.UTF_8));
+            mRowCounts.add(0);
+            mByteCounts.add(write(mHeader));
+            writeIndex();
+        }
+
+        long bytes = write(row);
+        mRowCounts.set(current, mRowCounts.get(current) + 1);
+        mByteCounts.set(current, mByteCounts.get(current) + bytes);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (mWriter != null) {
+            mWriter.flush();
+        }
+    }
+
+    /**
+     * Marks every shard complete in the index. Nothing more should be appended afterwards.
+     */
+    @Override
+    public void close() {
+        if (mDeleted) {
+            // Nothing left to mark complete
+            return;
+        }
+        mClosed = true;
+        try {
+            if (mWriter != null) {
+                mWriter.close();
+                mWriter = null;
+            }
+            writeIndex();
+        } catch (IOException e) {
+            Log.e(ExperimentSession.TAG, "Couldn't write " + INDEX_FILE, e);
+        }
+    }
+
+    /***
+     * Deletes this session's results. Other sessions are not touched.
+     */
+    @Override
+    public void delete() {
+        mDeleted = true;
+        try {
+            if (mWriter != null) {
+                mWriter.close();
+                mWriter = null;
+            }
+        } catch (IOException e) {
+            Log.e(ExperimentSession.TAG, "Couldn't close " + mDirectory, e);
+        }
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        mDirectory.delete();
+        mRowCounts.clear();
+        mByteCounts.clear();
+    }
+
+    // Appends a line to the open shard and returns how many bytes were written
+    private long write(String line) throws IOException {
+        mWriter.append(line);
+        mWriter.append('\n');
+        return utf8Length(line) + 1;
+    }
+
+    // How many bytes a string takes in UTF-8, without encoding it
+    private static long utf8Length(String s) {
+        long bytes = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                bytes += 1;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+                    && Character.isLowSurrogate(s.charAt(i + 1))) {
+                // A surrogate pair is one 4 byte code point
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                // An unpaired surrogate is written as '?'
+                bytes += 1;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    // Rewrites the index through a temporary file, so it is never left half written
+    private void writeIndex() throws IOException {
+        File tmp = new File(mDirectory, INDEX_FILE + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp),
+                StandardCharsets.UTF_8)) {
+            writer.append("shard, rows, bytes, complete\n");
+            for (int i = 0; i < mRowCounts.size(); i++) {
+                boolean complete = mClosed || i < mRowCounts.size() - 1;
+                writer.append(getShard(i).getName()).append(',')
+                        .append(String.valueOf(mRowCounts.get(i))).append(',')
+                        .append(String.valueOf(mByteCounts.get(i))).append(',')
+                        .append(String.valueOf(complete)).append('\n');
+            }
+        }
+        if (!tmp.renameTo(new File(mDirectory, INDEX_FILE))) {
+            throw new IOException("Couldn't replace " + INDEX_FILE);
+        }
+    }
+}
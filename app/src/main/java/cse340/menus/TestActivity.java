@@ -10,6 +10,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import cse340.menus.enums.MenuType;
 import cse340.menus.views.*;
 
 
@@ -18,14 +19,14 @@ public class TestActivity extends AbstractMainActivity {
     /** List of items in the menu that will be displayed in the menu for this activity */
     protected List<String> mMenuItems;
 
-    /** The normal menu that will be tested */
-    private MenuExperimentView mNormalMenu;
+    /** Option menu item IDs for opening each type of menu start here (plus the type's ordinal) */
+    private static final int OPEN_MENU_ID = Menu.FIRST + 1000;
 
-    /** The pie menu that will be tested */
-    private MenuExperimentView mPieMenu;
+    /** One menu of each registered type to test, indexed by the type's ordinal */
+    private MenuExperimentView[] mMenus;
 
-    /** The student's custom menu that will be tested */
-    private MenuExperimentView mCustomMenu;
+    /** Shows how the menus are performing, while toggled on */
+    private PerformanceOverlayView mOverlay;
 
     /**
      * Callback that is called when the activity is first created.
@@ -39,17 +40,13 @@ public class TestActivity extends AbstractMainActivity {
         Collections.addAll(testItems, "1", "2", "4", "8", "16");
         mMenuItems = testItems;
 
-        mNormalMenu = new NormalMenuView(this, mMenuItems);
-        mNormalMenu.setVisibility(View.INVISIBLE);
-        mMainLayout.addView(mNormalMenu);
-        mPieMenu = new PieMenuView(this, mMenuItems);
-        mPieMenu.setVisibility(View.INVISIBLE);
-        mMainLayout.addView(mPieMenu);
-        mCustomMenu = new CustomMenuView(this, mMenuItems);
-        mCustomMenu.setVisibility(View.INVISIBLE);
-        mMainLayout.addView(mCustomMenu);
-
-        mMenuView = mNormalMenu;
+        mMenus = MenuRegistry.prewarm(this, mMenuItems);
+        for (MenuType type : MenuRegistry.getTypes()) {
+            mMenus[type.ordinal()].setVisibility(View.INVISIBLE);
+            mMainLayout.addView(mMenus[type.ordinal()]);
+        }
+
+        mMenuView = mMenus[MenuRegistry.getTypes().get(0).ordinal()];
     }
 
     /**
@@ -61,6 +58,10 @@ public class TestActivity extends AbstractMainActivity {
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate(R.menu.menu_test, menu);
+        for (MenuType type : MenuRegistry.getTypes()) {
+            menu.add(Menu.NONE, OPEN_MENU_ID + type.ordinal(), Menu.NONE,
+                    getString(R.string.open_menu, getString(MenuRegistry.getName(type))));
+        }
         return true;
     }
 
@@ -71,19 +72,37 @@ public class TestActivity extends AbstractMainActivity {
      */
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
+        if (item.getItemId() == R.id.action_performance_overlay) {
+            item.setChecked(!item.isChecked());
+            setPerformanceOverlay(item.isChecked());
+            return true;
+        }
+
         // Handle item selection
-        mMenuView.setCurrentIndex(-1);
+        mMenuView.clearHighlight();
         mMenuView.setVisibility(View.INVISIBLE);
 
         // Inspect the item to determine the menu type
-        switch (item.getItemId()) {
-            case R.id.action_open_normal: mMenuView = mNormalMenu; break;
-            case R.id.action_open_pie: mMenuView = mPieMenu;  break;
-            case R.id.action_open_custom: mMenuView = mCustomMenu;  break;
-            default: return super.onOptionsItemSelected(item);
+        int ordinal = item.getItemId() - OPEN_MENU_ID;
+        if (ordinal < 0 || ordinal >= mMenus.length || mMenus[ordinal] == null) {
+            return super.onOptionsItemSelected(item);
         }
-
+        mMenuView = mMenus[ordinal];
         return true;
     }
 
+    /**
+     * Shows or hides the performance overlay. The menus only time themselves while it is shown.
+     * @param show true to show it
+     */
+    private void setPerformanceOverlay(boolean show) {
+        if (show && mOverlay == null) {
+            mOverlay = new PerformanceOverlayView(this);
+            mMainLayout.addView(mOverlay);
+        } else if (!show && mOverlay != null) {
+            mMainLayout.removeView(mOverlay);
+            mOverlay = null;
+        }
+    }
+
 }
@@ -0,0 +1,218 @@
+package cse340.menus;
+
+import android.view.MotionEvent;
+
+/**
+ * Every touch sample of one selection, including the historical samples a MotionEvent
+ * batches together, so the whole path of the finger can be analysed afterwards even when
+ * the menu only looked at some of them. Along with the position, each sample keeps the
+ * pressure, the size and orientation of the touch and the tool that made it, which help
+ * explain errors; they are summarized per trial by summarize().
+ *
+ * Samples are kept in parallel primitive arrays. They are sized for a typical selection up
+ * front and only grow (doubling) for unusually long ones.
+ */
+public class TouchSamples {
+
+    /** Room for about a second of samples on a 240 Hz digitizer */
+    private static final int INITIAL_CAPACITY = 256;
+
+    /** When the selection started, sample times are logged relative to it */
+    private final long mStartMillis;
+
+    /** The samples */
+    private long[] mTimes = new long[INITIAL_CAPACITY];
+    private float[] mXs = new float[INITIAL_CAPACITY];
+    private float[] mYs = new float[INITIAL_CAPACITY];
+    private float[] mPressures = new float[INITIAL_CAPACITY];
+    private float[] mTouchMajors = new float[INITIAL_CAPACITY];
+    private float[] mTouchMinors = new float[INITIAL_CAPACITY];
+    private float[] mOrientations = new float[INITIAL_CAPACITY];
+    private byte[] mToolTypes = new byte[INITIAL_CAPACITY];
+    private int mCount;
+
+    /** Summary of the samples, filled in by summarize() */
+    private float mMeanPressure, mMaxPressure;
+    private float mMeanTouchMajor, mMeanTouchMinor;
+    private float mMeanOrientation;
+    private int mToolType = MotionEvent.TOOL_TYPE_UNKNOWN;
+
+    /**
+     * Constructor
+     *
+     * @param startMillis When the selection started (uptime)
+     */
+    public TouchSamples(long startMillis) {
+        mStartMillis = startMillis;
+    }
+
+    /**
+     * Adds an event's historical samples and then its current one.
+     * @param event The event, in the menu's coordinates
+     */
+    public void add(MotionEvent event) {
+        // The tool can't change within an event, so its historical samples share it
+        byte toolType = (byte) event.getToolType(0);
+        int history = event.getHistorySize();
+        for (int h = 0; h < history; h++) {
+            add(event.getHistoricalEventTime(h), event.getHistoricalX(h), event.getHistoricalY(h),
+                    event.getHistoricalPressure(h), event.getHistoricalTouchMajor(h),
+                    event.getHistoricalTouchMinor(h), event.getHistoricalOrientation(h), toolType);
+        }
+        add(event.getEventTime(), event.getX(), event.getY(), event.getPressure(),
+                event.getTouchMajor(), event.getTouchMinor(), event.getOrientation(), toolType);
+    }
+
+    private void add(long timeMillis, float x, float y, float pressure, float touchMajor,
+                     float touchMinor, float orientation, byte toolType) {
+        if (mCount == mTimes.length) {
+            grow();
+        }
+        mTimes[mCount] = timeMillis;
+        mXs[mCount] = x;
+        mYs[mCount] = y;
+        mPressures[mCount] = pressure;
+        mTouchMajors[mCount] = touchMajor;
+        mTouchMinors[mCount] = touchMinor;
+        mOrientations[mCount] = orientation;
+        mToolTypes[mCount] = toolType;
+        mCount++;
+    }
+
+    private void grow() {
+        int capacity = 2 * mTimes.length;
+        mTimes = grow(mTimes, capacity);
+        mXs = grow(mXs, capacity);
+        mYs = grow(mYs, capacity);
+        mPressures = grow(mPressures, capacity);
+        mTouchMajors = grow(mTouchMajors, capacity);
+        mTouchMinors = grow(mTouchMinors, capacity);
+        mOrientations = grow(mOrientations, capacity);
+        mToolTypes = grow(mToolTypes, capacity);
+    }
+
+    private long[] grow(long[] values, int capacity) {
+        long[] grown = new long[capacity];
+        System.arraycopy(values, 0, grown, 0, mCount);
+        return grown;
+    }
+
+    private float[] grow(float[] values, int capacity) {
+        float[] grown = new float[capacity];
+        System.arraycopy(values, 0, grown, 0, mCount);
+        return grown;
+    }
+
+    private byte[] grow(byte[] values, int capacity) {
+        byte[] grown = new byte[capacity];
+        System.arraycopy(values, 0, grown, 0, mCount);
+        return grown;
+    }
+
+    /**
+     * Computes the summary statistics of the samples. Called once the selection has ended.
+     */
+    public void summarize() {
+        if (mCount == 0) {
+            return;
+        }
+        double pressure = 0, touchMajor = 0, touchMinor = 0;
+        // The ellipse's orientation is an axis (θ and θ + π are the same), so it is averaged
+        // as the angle 2θ on the circle and halved after
+        double sin2 = 0, cos2 = 0;
+        float maxPressure = 0;
+        for (int i = 0; i < mCount; i++) {
+            pressure += mPressures[i];
+            maxPressure = Math.max(maxPressure, mPressures[i]);
+            touchMajor += mTouchMajors[i];
+            touchMinor += mTouchMinors[i];
+            sin2 += Math.sin(2 * mOrientations[i]);
+            cos2 += Math.cos(2 * mOrientations[i]);
+        }
+        mMeanPressure = (float) (pressure / mCount);
+        mMaxPressure = maxPressure;
+        mMeanTouchMajor = (float) (touchMajor / mCount);
+        mMeanTouchMinor = (float) (touchMinor / mCount);
+        mMeanOrientation = (float) (0.5 * Math.atan2(sin2, cos2));
+        // A selection is a single pointer, which keeps its tool from down to up
+        mToolType = mToolTypes[0];
+    }
+
+    public int size() {
+        return mCount;
+    }
+
+    public long getTime(int i) {
+        return mTimes[i];
+    }
+
+    public float getX(int i) {
+        return mXs[i];
+    }
+
+    public float getY(int i) {
+        return mYs[i];
+    }
+
+    public float getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public float getTouchMajor(int i) {
+        return mTouchMajors[i];
+    }
+
+    public float getTouchMinor(int i) {
+        return mTouchMinors[i];
+    }
+
+    public float getOrientation(int i) {
+        return mOrientations[i];
+    }
+
+    public int getToolType(int i) {
+        return mToolTypes[i];
+    }
+
+    /**
+     * Appends the samples as one CSV column: space separated "time:x:y" triples, with times
+     * in milliseconds since the selection started.
+     *
+     * @param s Where to append them
+     */
+    public void appendTo(StringBuilder s) {
+        for (int i = 0; i < mCount; i++) {
+            if (i > 0) {
+                s.append(' ');
+            }
+            s.append(mTimes[i] - mStartMillis).append(':').append(mXs[i]).append(':').append(mYs[i]);
+        }
+    }
+
+    /**
+     * Appends the summary computed by summarize() as six CSV columns: mean and max pressure,
+     * mean touch major and minor axes (px), mean orientation (radians) and tool type.
+     *
+     * @param s Where to append them
+     */
+    public void appendSummaryTo(StringBuilder s) {
+        s.append(mMeanPressure).append(',').append(mMaxPressure).append(',');
+        s.append(mMeanTouchMajor).append(',').append(mMeanTouchMinor).append(',');
+        s.append(mMeanOrientation).append(',').append(toolTypeName(mToolType));
+    }
+
+    private static String toolTypeName(int toolType) {
+        switch (toolType) {
+            case MotionEvent.TOOL_TYPE_FINGER:
+                return "finger";
+            case MotionEvent.TOOL_TYPE_STYLUS:
+                return "stylus";
+            case MotionEvent.TOOL_TYPE_MOUSE:
+                return "mouse";
+            case MotionEvent.TOOL_TYPE_ERASER:
+                return "eraser";
+            default:
+                return "unknown";
+        }
+    }
+}
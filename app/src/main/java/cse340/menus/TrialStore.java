@@ -0,0 +1,266 @@
+package cse340.menus;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import cse340.menus.enums.MenuType;
+import cse340.menus.enums.TaskType;
+
+/**
+ * An on-device SQLite store of every recorded trial, so past trials can be queried (for
+ * example "all PIE trials for participant 412 with errors") without scanning CSV files.
+ *
+ * The columns that are queried on are stored separately and indexed, next to the trial's
+ * full CSV row so it can be exported exactly as it was recorded (ResultExporter adds the
+ * trials that aren't in a ShardedResultStore shard to each archive). Trials are inserted in batches, each
+ * batch in one transaction through a precompiled statement, on a background thread.
+ */
+public class TrialStore extends SQLiteOpenHelper {
+
+    /** The database file and its schema version */
+    private static final String DATABASE_NAME = "trials.db";
+    private static final int DATABASE_VERSION = 3;
+
+    /** How many trials to collect before inserting them */
+    private static final int BATCH_SIZE = 12;
+
+    /** The table and its columns */
+    private static final String TABLE = "trials";
+    public static final String COLUMN_ID = "_id";
+    public static final String COLUMN_SESSION = "session";
+    public static final String COLUMN_IN_SHARD = "in_shard";
+    public static final String COLUMN_PARTICIPANT = "participant";
+    public static final String COLUMN_TRIAL_NUM = "trial_num";
+    public static final String COLUMN_MENU = "menu";
+    public static final String COLUMN_TASK = "task";
+    public static final String COLUMN_DURATION = "duration";
+    public static final String COLUMN_ERROR = "error";
+    public static final String COLUMN_ROW = "row";
+
+    /** There is one store per process */
+    private static TrialStore sInstance;
+
+    /** Trials waiting to be inserted, as the values of the insert statement */
+    private List<Object[]> mPending = new ArrayList<>(BATCH_SIZE);
+
+    /** Inserts happen here, in the order they were submitted */
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+
+    /** Reused for every insert. Only used on mExecutor. */
+    private SQLiteStatement mInsert;
+
+    private TrialStore(Context context) {
+        super(context.getApplicationContext(), DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    /**
+     * Get the store, opening it the first time.
+     * @param context Any context in the app
+     * @return the app's trial store
+     */
+    public static synchronized TrialStore getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new TrialStore(context);
+        }
+        return sInstance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE + " ("
+                + COLUMN_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + COLUMN_SESSION + " INTEGER NOT NULL DEFAULT 0, "
+                + COLUMN_IN_SHARD + " INTEGER NOT NULL DEFAULT 1, "
+                + COLUMN_PARTICIPANT + " INTEGER NOT NULL, "
+                + COLUMN_TRIAL_NUM + " INTEGER NOT NULL, "
+                + COLUMN_MENU + " TEXT NOT NULL, "
+                + COLUMN_TASK + " TEXT NOT NULL, "
+                + COLUMN_DURATION + " INTEGER NOT NULL, "
+                + COLUMN_ERROR + " INTEGER NOT NULL, "
+                + COLUMN_ROW + " TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX trials_participant ON " + TABLE + " (" + COLUMN_PARTICIPANT + ")");
+        db.execSQL("CREATE INDEX trials_menu ON " + TABLE + " (" + COLUMN_MENU + ")");
+        db.execSQL("CREATE INDEX trials_task ON " + TABLE + " (" + COLUMN_TASK + ")");
+        createSessionIndex(db);
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // Trials stored before sessions were recorded can't be deleted with their session
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN "
+                    + COLUMN_SESSION + " INTEGER NOT NULL DEFAULT 0");
+            createSessionIndex(db);
+        }
+        if (oldVersion < 3) {
+            // Older trials count as exported with their shards, so they aren't exported twice
+            db.execSQL("ALTER TABLE " + TABLE + " ADD COLUMN "
+                    + COLUMN_IN_SHARD + " INTEGER NOT NULL DEFAULT 1");
+        }
+    }
+
+    private static void createSessionIndex(SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX trials_session ON " + TABLE + " (" + COLUMN_SESSION + ")");
+    }
+
+    /**
+     * Queues a completed trial to be stored. It is written with the next batch.
+     * @param sessionId The session the trial belongs to
+     * @param trial The completed trial
+     * @param row The trial's CSV row (trial.toString())
+     * @param inShard Whether the row was also written to a ShardedResultStore shard
+     */
+    public void insert(long sessionId, ExperimentTrial trial, String row, boolean inShard) {
+        mPending.add(new Object[] {
+                sessionId, inShard ? 1 : 0, trial.getParticipantNum(), trial.getTrialNum(),
+                trial.getMenu().name(), trial.getTask().name(), trial.getTaskDuration(),
+                trial.isError() ? 1 : 0, row
+        });
+        if (mPending.size() >= BATCH_SIZE) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the queued trials in one transaction on the background thread.
+     */
+    public void flush() {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        final List<Object[]> batch = mPending;
+        mPending = new ArrayList<>(BATCH_SIZE);
+        mExecutor.execute(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            if (mInsert == null) {
+                mInsert = db.compileStatement("INSERT INTO " + TABLE + " ("
+                        + COLUMN_SESSION + ", " + COLUMN_IN_SHARD + ", " + COLUMN_PARTICIPANT + ", "
+                        + COLUMN_TRIAL_NUM + ", " + COLUMN_MENU + ", " + COLUMN_TASK + ", "
+                        + COLUMN_DURATION + ", " + COLUMN_ERROR + ", " + COLUMN_ROW
+                        + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)");
+            }
+            db.beginTransaction();
+            try {
+                for (Object[] trial : batch) {
+                    mInsert.bindLong(1, (Long) trial[0]);
+                    mInsert.bindLong(2, (Integer) trial[1]);
+                    mInsert.bindLong(3, (Integer) trial[2]);
+                    mInsert.bindLong(4, (Integer) trial[3]);
+                    mInsert.bindString(5, (String) trial[4]);
+                    mInsert.bindString(6, (String) trial[5]);
+                    mInsert.bindLong(7, (Long) trial[6]);
+                    mInsert.bindLong(8, (Integer) trial[7]);
+                    mInsert.bindString(9, (String) trial[8]);
+                    mInsert.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } catch (RuntimeException e) {
+                Log.e(ExperimentSession.TAG, "Failed to store trials", e);
+            } finally {
+                db.endTransaction();
+            }
+        });
+    }
+
+    /**
+     * Deletes a session's trials, including ones still waiting to be inserted.
+     * @param sessionId The session
+     */
+    public void delete(final long sessionId) {
+        for (int i = mPending.size() - 1; i >= 0; i--) {
+            if ((Long) mPending.get(i)[0] == sessionId) {
+                mPending.remove(i);
+            }
+        }
+        // After any batch of the session already submitted
+        mExecutor.execute(() -> {
+            try {
+                getWritableDatabase().delete(TABLE, COLUMN_SESSION + " = ?",
+                        new String[] { Long.toString(sessionId) });
+            } catch (RuntimeException e) {
+                Log.e(ExperimentSession.TAG, "Failed to delete trials", e);
+            }
+        });
+    }
+
+    /**
+     * Finds stored trials. Any of the filters may be null to not filter on it. This reads the
+     * database and should not be called on the UI thread.
+     *
+     * @param participant Only trials by this participant
+     * @param menu Only trials with this menu type
+     * @param task Only trials with this task type
+     * @param errorsOnly Only trials where the wrong item was selected
+     * @return a cursor over the matching trials, in the order they were recorded
+     */
+    public Cursor query(Integer participant, MenuType menu, TaskType task, boolean errorsOnly) {
+        StringBuilder where = new StringBuilder("1");
+        List<String> args = new ArrayList<>();
+        if (participant != null) {
+            where.append(" AND ").append(COLUMN_PARTICIPANT).append(" = ?");
+            args.add(participant.toString());
+        }
+        if (menu != null) {
+            where.append(" AND ").append(COLUMN_MENU).append(" = ?");
+            args.add(menu.name());
+        }
+        if (task != null) {
+            where.append(" AND ").append(COLUMN_TASK).append(" = ?");
+            args.add(task.name());
+        }
+        if (errorsOnly) {
+            where.append(" AND ").append(COLUMN_ERROR).append(" = 1");
+        }
+        return getReadableDatabase().query(TABLE, null, where.toString(),
+                args.toArray(new String[0]), null, null, COLUMN_ID);
+    }
+
+    /**
+     * Finds the trials whose rows aren't in a ShardedResultStore shard, because they were
+     * written to a folder picked by the user (or not written anywhere). This reads the
+     * database and should not be called on the UI thread.
+     *
+     * @param afterId Only trials stored after the one with this id (COLUMN_ID), 0 for all
+     * @return a cursor over the trials, in the order they were recorded
+     */
+    public Cursor queryNotInShards(long afterId) {
+        return getReadableDatabase().query(TABLE, null,
+                COLUMN_IN_SHARD + " = 0 AND " + COLUMN_ID + " > ?",
+                new String[] { Long.toString(afterId) }, null, null, COLUMN_ID);
+    }
+
+    /**
+     * Writes trials from query as CSV, in the same format as the result files.
+     *
+     * @param trials A cursor returned by query or queryNotInShards. It is closed when done.
+     * @param out Where to write the CSV
+     * @return the id of the last trial written, or 0 if there were none
+     * @throws IOException if the CSV couldn't be written
+     */
+    public static long exportCSV(Cursor trials, Writer out) throws IOException {
+        long lastId = 0;
+        try {
+            int id = trials.getColumnIndexOrThrow(COLUMN_ID);
+            int row = trials.getColumnIndexOrThrow(COLUMN_ROW);
+            out.append(ExperimentSession.CSV_HEADER).append('\n');
+            while (trials.moveToNext()) {
+                out.append(trials.getString(row)).append('\n');
+                lastId = trials.getLong(id);
+            }
+        } finally {
+            trials.close();
+        }
+        return lastId;
+    }
+}
@@ -0,0 +1,14 @@
+package cse340.menus.enums;
+
+/**
+ * How a menu selection is committed: when the finger is lifted (RELEASE, the default), when
+ * the finger rests on an item (DWELL), when the finger leaves the menu through an item
+ * (CROSSING), or when the finger presses harder on an item (PRESSURE). Lifting the finger
+ * always commits, whatever the type.
+ */
+public enum CommitType {
+    RELEASE,
+    DWELL,
+    CROSSING,
+    PRESSURE
+}
@@ -0,0 +1,16 @@
+package cse340.menus.enums;
+
+/**
+ * What kind of mistake a trial's selection was, worked out from the menu's layout when the
+ * trial ends: NONE if the prompted item was selected, DEAD_ZONE if the finger was released
+ * before it got far enough to select anything, OVERSHOOT if it was released outside the menu
+ * (past the pie's radius, or off the cells), ADJACENT_SLIP if the selected item is next to
+ * the prompted one, and WRONG_FAR for any other wrong item.
+ */
+public enum ErrorType {
+    NONE,
+    ADJACENT_SLIP,
+    OVERSHOOT,
+    DEAD_ZONE,
+    WRONG_FAR
+}
@@ -12,9 +12,12 @@ import android.view.View;
 import android.widget.FrameLayout;
 import android.widget.Toast;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import cse340.menus.ExperimentTrial;
+import cse340.menus.MenuLayout;
+import cse340.menus.PerformanceCounters;
 import cse340.menus.TrialListener;
 import cse340.menus.enums.State;
 
@@ -26,6 +29,18 @@ public abstract class AbstractMenuExperimentView extends View {
     /** The items displayed in this menu. */
     private List<String> mItems;
 
+    /** The items in the order they were given to the constructor. */
+    private final List<String> mOriginalItems;
+
+    /**
+     * If the items have been reordered, the index in the original item list of the item
+     * displayed at each position. Null if the items are in their original order.
+     */
+    private int[] mItemOrder;
+
+    /** The measured label of each displayed item, filled in from LabelCache as they are drawn */
+    private LabelCache.Label[] mLabels;
+
     /** The current state of this menu (selecting or not). */
     protected State mState;
 
@@ -41,6 +56,9 @@ public abstract class AbstractMenuExperimentView extends View {
     protected static final float TEXT_SIZE_RATIO = 0.028f;
     protected final int TEXT_SIZE;
 
+    /** Labels that don't fit are shrunk down to this fraction of their size before ellipsizing */
+    private static final float MIN_TEXT_SCALE = 0.6f;
+
     /**
      * Constant for threshold distance from starting point. Until this distance threshold
      * is crossed, the menu should night highlight an item as "selected"
@@ -48,6 +66,13 @@ public abstract class AbstractMenuExperimentView extends View {
     public static final float MIN_DIST_RATIO = 0.007f;
     protected final int MIN_DIST;
 
+    /**
+     * The area around the finger's starting point in which nothing is selected. By default
+     * it is a circle of radius MIN_DIST.
+     */
+    private int mDeadZoneShape = MenuLayout.DEAD_ZONE_CIRCLE;
+    private float mDeadZoneRadius;
+
     /**
      * The currently selected index of your menu view. Your `onTouchEvent` function
      * should modify this (using the accessor/mutator) in order to record the menu's current state.
@@ -70,9 +95,11 @@ public abstract class AbstractMenuExperimentView extends View {
         super(context);
 
         this.mItems = items;
+        this.mOriginalItems = items;
 
         TEXT_SIZE = (int) (TEXT_SIZE_RATIO * Math.min(mDisplayMetrics.widthPixels, mDisplayMetrics.heightPixels));
         MIN_DIST =  (int) (MIN_DIST_RATIO * Math.min(mDisplayMetrics.widthPixels, mDisplayMetrics.heightPixels));
+        mDeadZoneRadius = MIN_DIST;
 
         // default paint to draw/highlight menu.
         // you may change the paint styles if you'd like
@@ -112,23 +139,6 @@ public abstract class AbstractMenuExperimentView extends View {
      */
     protected abstract void setup();
 
-    /**
-     * Similar to onDraw, shifts the selection point so that the current finger position is
-     * relative to to the menu's (0,0).
-     *
-     * Then asks essentialGeometry where (p) is. This should return the menu item that the finger
-     * is in, or -1 if the finger has (a) moved less than MIN_DIST or (b) is not in any menu item.
-     *
-     * @param e The motion event being processed in onTouchEvent
-     * @return the index of the menu item under the user's finger or -1 if none.
-     */
-    protected int essentialGeometry(MotionEvent e) {
-        PointF currentPoint = new PointF(e.getX(), e.getY());
-
-        // Call essentialGeometry and return the result
-        return essentialGeometry(currentPoint);
-    }
-
     /**
      * Calculates the index of the menu item using the current finger position
      * This is specific to your menu's geometry, so override it in your Pie and Normal menu classes.
@@ -141,6 +151,15 @@ public abstract class AbstractMenuExperimentView extends View {
      */
     protected abstract int essentialGeometry(PointF p);
 
+    /**
+     * Describes the menu as it is currently laid out, so that it can be recorded with the trial
+     * and points can be hit tested again after the experiment. The layout must give the same
+     * answer as essentialGeometry for every point.
+     *
+     * @return the current layout of the menu
+     */
+    public abstract MenuLayout describeLayout();
+
     /***
      * Handles user's touch input on the screen. It should follow the state machine specified
      * in the spec.
@@ -180,13 +199,30 @@ public abstract class AbstractMenuExperimentView extends View {
      */
     protected abstract void onDraw(Canvas canvas);
 
+    /**
+     * Times the menu's drawing for the performance overlay, when it is on.
+     *
+     * @param canvas Canvas to draw on.
+     */
+    @Override
+    public void draw(Canvas canvas) {
+        if (!PerformanceCounters.isEnabled()) {
+            super.draw(canvas);
+            return;
+        }
+        long start = System.nanoTime();
+        super.draw(canvas);
+        PerformanceCounters.recordDraw(System.nanoTime() - start);
+    }
+
 
     /**
-     * Method to announce a string using a Toast.
+     * Method to announce a string using a Toast, and to screen readers.
      * @param s The string to announce to the user in a toast
      */
     public void announce(String s) {
         Toast.makeText(getContext(), s, Toast.LENGTH_SHORT).show();
+        announceForAccessibility(s);
     }
 
     /**
@@ -213,6 +249,19 @@ public abstract class AbstractMenuExperimentView extends View {
         return mTrial != null;
     }
 
+    /**
+     * Whether a point is in the dead zone.
+     * @param dx The point's x distance from the dead zone's center
+     * @param dy The point's y distance from the dead zone's center
+     * @return true if nothing should be selected at the point
+     */
+    protected boolean inDeadZone(float dx, float dy) {
+        if (mDeadZoneShape == MenuLayout.DEAD_ZONE_SQUARE) {
+            return Math.abs(dx) < mDeadZoneRadius && Math.abs(dy) < mDeadZoneRadius;
+        }
+        return dx * dx + dy * dy < mDeadZoneRadius * mDeadZoneRadius;
+    }
+
     /**
      * Get the distance of this point from the origin.
      * @param p the point in question
@@ -238,6 +287,97 @@ public abstract class AbstractMenuExperimentView extends View {
         return mItems;
     }
 
+    /**
+     * Reorder the items in the menu, for example for an adaptive menu. The menu's geometry
+     * does not change, only which item is shown (and selected) in each position.
+     * @param order order[i] is the index in the original list of the item to show at position i
+     */
+    public void setItemOrder(int[] order) {
+        List<String> reordered = new ArrayList<>(mOriginalItems.size());
+        for (int index : order) {
+            reordered.add(mOriginalItems.get(index));
+        }
+        mItems = reordered;
+        mItemOrder = order;
+        mLabels = null;
+    }
+
+    /**
+     * Get the measured label of a displayed item, fit to getLabelWidth. Labels are shared
+     * through LabelCache, so an item is only measured once no matter how many menus show it,
+     * and they are all fit together the first time one is needed.
+     * @param index The position of the item in the menu
+     * @return the item's label. Draw label.display at label.textSize.
+     */
+    protected LabelCache.Label getLabel(int index) {
+        if (mLabels == null) {
+            mLabels = new LabelCache.Label[mItems.size()];
+            float minTextSize = mTextPaint.getTextSize() * MIN_TEXT_SCALE;
+            for (int i = 0; i < mLabels.length; i++) {
+                float width = getLabelWidth(i);
+                mLabels[i] = width > 0
+                        ? LabelCache.fit(mItems.get(i), mTextPaint, width, minTextSize)
+                        : LabelCache.get(mItems.get(i), mTextPaint, 0);
+            }
+        }
+        return mLabels[index];
+    }
+
+    /**
+     * Does the work that would otherwise wait for the first draw, like measuring and fitting
+     * the labels, so the menu can be shown without delay.
+     */
+    public void prepare() {
+        if (!mItems.isEmpty()) {
+            getLabel(0);
+        }
+    }
+
+    /**
+     * The width available for a label. Menus whose labels can overflow override this so
+     * that getLabel shrinks or ellipsizes them to fit.
+     * @param index The position of the item in the menu
+     * @return the width available, or 0 if the label should not be fit
+     */
+    protected float getLabelWidth(int index) {
+        return 0;
+    }
+
+    /**
+     * Get the index in the original item list of the item displayed at a position.
+     * @param index The position in the menu, or -1
+     * @return the index in the original item list, or -1 if index was -1
+     */
+    public int getOriginalIndex(int index) {
+        return (mItemOrder == null || index < 0) ? index : mItemOrder[index];
+    }
+
+    /**
+     * Determine if the items have been reordered from their original order.
+     * @return true if setItemOrder has been called
+     */
+    public boolean isReordered() {
+        return mItemOrder != null;
+    }
+
+    /**
+     * Change the dead zone around the finger's starting point.
+     * @param shape MenuLayout.DEAD_ZONE_CIRCLE or MenuLayout.DEAD_ZONE_SQUARE
+     * @param radius The circle's radius, or the distance from the square's center to its sides
+     */
+    public void setDeadZone(int shape, float radius) {
+        mDeadZoneShape = shape;
+        mDeadZoneRadius = radius;
+    }
+
+    public int getDeadZoneShape() {
+        return mDeadZoneShape;
+    }
+
+    public float getDeadZoneRadius() {
+        return mDeadZoneRadius;
+    }
+
     /**
      * Get the currently selected index of your menu view.
      * @return The currently selected index of the menu view.
@@ -307,6 +447,7 @@ public abstract class AbstractMenuExperimentView extends View {
      */
     public void setTextPaint(Paint textPaint) {
         this.mTextPaint = textPaint;
+        mLabels = null;
     }
 
 
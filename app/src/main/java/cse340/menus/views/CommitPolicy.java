@@ -0,0 +1,68 @@
+package cse340.menus.views;
+
+import cse340.menus.MenuLayout;
+import cse340.menus.enums.CommitType;
+
+/**
+ * Decides when a selection is committed before the finger is lifted. A policy is given every
+ * move of the selection, in order, and answers straight away, so each move only costs a
+ * constant amount of work. Lifting the finger always commits the highlighted item, so a
+ * policy only has to decide about committing early.
+ */
+public interface CommitPolicy {
+
+    /** Returned by onMove to keep selecting */
+    int CONTINUE = -2;
+
+    /**
+     * Get a new policy of a type.
+     * @param type The type of policy
+     * @return a policy, ready for start
+     */
+    static CommitPolicy forType(CommitType type) {
+        switch (type) {
+            case DWELL:
+                return new DwellCommitPolicy();
+            case CROSSING:
+                return new CrossingCommitPolicy();
+            case PRESSURE:
+                return new PressureCommitPolicy();
+            default:
+                return new ReleaseCommitPolicy();
+        }
+    }
+
+    /**
+     * Called when a selection starts.
+     * @param layout The menu's layout for this selection
+     * @param pressure The finger's pressure when it came down
+     * @param timeMillis When the selection started (uptime)
+     */
+    void start(MenuLayout layout, float pressure, long timeMillis);
+
+    /**
+     * Called for each move of the selection, after the highlight has been updated.
+     *
+     * @param item The highlighted item (position in the menu), or -1
+     * @param x The finger's position relative to the menu's (0,0)
+     * @param y The finger's position relative to the menu's (0,0)
+     * @param pressure The finger's pressure
+     * @param timeMillis When the move happened (uptime)
+     * @return the item to commit (or -1 to commit nothing), or CONTINUE
+     */
+    int onMove(int item, float x, float y, float pressure, long timeMillis);
+
+    /**
+     * If the policy can commit while the finger is still, how long from now it should be
+     * asked again (with the same position) if no other move comes in. Called after onMove
+     * returned CONTINUE.
+     * @param timeMillis The current time (uptime)
+     * @return the delay in milliseconds, or 0 if it only depends on moves
+     */
+    long getRecheckMillis(long timeMillis);
+
+    /**
+     * @return the type of this policy, as logged with the trial
+     */
+    CommitType getType();
+}
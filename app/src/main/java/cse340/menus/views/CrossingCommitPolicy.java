@@ -0,0 +1,43 @@
+package cse340.menus.views;
+
+import cse340.menus.MenuLayout;
+import cse340.menus.enums.CommitType;
+
+/**
+ * Commits an item when the finger leaves the menu through it: the item was highlighted and
+ * now nothing is, without the finger having gone back into the dead zone.
+ */
+class CrossingCommitPolicy implements CommitPolicy {
+
+    /** Used to tell leaving the menu apart from going back to the dead zone */
+    private MenuLayout mLayout;
+
+    /** The item highlighted before this move */
+    private int mItem;
+
+    @Override
+    public void start(MenuLayout layout, float pressure, long timeMillis) {
+        mLayout = layout;
+        mItem = -1;
+    }
+
+    @Override
+    public int onMove(int item, float x, float y, float pressure, long timeMillis) {
+        int previous = mItem;
+        mItem = item;
+        if (previous >= 0 && item == -1 && !mLayout.inDeadZone(x, y)) {
+            return previous;
+        }
+        return CONTINUE;
+    }
+
+    @Override
+    public long getRecheckMillis(long timeMillis) {
+        return 0;
+    }
+
+    @Override
+    public CommitType getType() {
+        return CommitType.CROSSING;
+    }
+}
@@ -10,9 +10,10 @@ import android.view.ViewGroup;
 
 import java.util.Collections;
 import java.util.List;
-import java.util.Random;
+import java.util.SplittableRandom;
 
 import cse340.menus.ExperimentTrial;
+import cse340.menus.MenuLayout;
 import cse340.menus.enums.State;
 
 public class CustomMenuView extends MenuExperimentView {
@@ -28,12 +29,16 @@ public class CustomMenuView extends MenuExperimentView {
     // Number of items in menu, stored for code clarity
     private int menuSize;
 
-    // Random object initialized and stored globally for efficiency
-    private Random mRandom;
+    // Source of the per-gesture layout seeds, initialized and stored globally for efficiency
+    private SplittableRandom mSeedSource;
     // Arrays to keep track of where each item is being assigned its index and vertical position
-    // with respect to their true indexing in the mItems List from parent class, and "inverse"
-    // arrays to go in reverse.
-    private int[] randomIndex, randomVertPos, inverseIndex, inverseVertPos;
+    // with respect to their true indexing in the mItems List from parent class.
+    private int[] randomIndex, randomVertPos;
+
+    // The cell (left, top, right, bottom) showing each item for the current gesture, and
+    // the index used to find the cell under the finger
+    private float[] mCellRects;
+    private HitTestIndex mHitIndex;
 
 
     // Constructors
@@ -63,11 +68,12 @@ public class CustomMenuView extends MenuExperimentView {
                 (int) (CELL_HEIGHT * menuSize + strokeAdjust)
         ));
 
-        mRandom = new Random();
+        mSeedSource = new SplittableRandom();
         randomIndex = new int[menuSize];
-        inverseIndex = new int[menuSize];
         randomVertPos = new int[menuSize];
-        inverseVertPos = new int[menuSize];
+
+        mCellRects = new float[4 * menuSize];
+        mHitIndex = new HitTestIndex(menuSize);
     }
 
     /**
@@ -80,26 +86,53 @@ public class CustomMenuView extends MenuExperimentView {
     @Override
     protected int essentialGeometry(PointF p) {
         if (!invalidSelection(p.x, p.y)) {
-            // Note that the index and vertPos arrays and their "inverses"
-            // correspond with a permutation group, so if you treat them
-            // as such, any call to those arrays is the code asking
-            // either "where should this index go" or "where did this
-            // index come from"
-            int rawVertPos = (int) Math.floor(p.y / CELL_HEIGHT);
-            int rawIndex = inverseVertPos[rawVertPos];
-            int actualIndex = inverseIndex[rawIndex];
-            if ((p.x > CELL_HEIGHT * rawIndex) &&
-                    (p.x < CELL_HEIGHT * rawIndex + CELL_WIDTH) ) {
-                // The following return calculation shifts the highlighted
-                // menu option to what it is half the menuSize away from
-                // the current selection modulo menuSize in the true sense
-                return (((actualIndex - (menuSize / 2)) % menuSize) +
-                        menuSize) % menuSize;
-            }
+            // The index is rebuilt from the shuffled cells on every gesture, and each
+            // cell already knows the (shifted) item it selects
+            return mHitIndex.query(p.x, p.y);
         }
         return -1;
     }
 
+    // The following calculation shifts the highlighted menu option to what it is
+    // half the menuSize away from the item in the cell modulo menuSize in the true sense
+    private int shiftedIndex(int actualIndex) {
+        return (((actualIndex - (menuSize / 2)) % menuSize) + menuSize) % menuSize;
+    }
+
+    /**
+     * Cell i shows item i, but selects the item half the menu away.
+     */
+    @Override
+    protected int getPositionForShape(int shape) {
+        return shiftedIndex(shape);
+    }
+
+    /**
+     * Describes the custom menu as it was shuffled for the current gesture. Cell i shows
+     * item i, but selects the item half the menu away (see essentialGeometry).
+     *
+     * @return the current layout of the menu
+     */
+    @Override
+    public MenuLayout describeLayout() {
+        int[] items = new int[menuSize];
+        for (int i = 0; i < menuSize; i++) {
+            items[i] = shiftedIndex(i);
+        }
+        float origin = (CELL_HEIGHT * menuSize) / 2;
+        return MenuLayout.cells(mCellRects.clone(), items, origin, origin, 0, 0,
+                getDeadZoneRadius(), getDeadZoneShape(), mDisplayMetrics.widthPixels,
+                mDisplayMetrics.heightPixels, mDisplayMetrics.density);
+    }
+
+    /**
+     * Labels start TEXT_OFFSET / 4 into the cell, and keep the same margin on the right.
+     */
+    @Override
+    protected float getLabelWidth(int index) {
+        return CELL_WIDTH - TEXT_OFFSET / 2 - getBorderPaint().getStrokeWidth();
+    }
+
     // Returns true if the given x,y coordinate is not within the bounding box
     // of this view or if the distance travelled by user is not more than the
     // minimum distance required for the app to register a selection is being
@@ -107,7 +140,7 @@ public class CustomMenuView extends MenuExperimentView {
     private boolean invalidSelection(float x, float y) {
         float strokeAdjust = getBorderPaint().getStrokeWidth();
         return
-                (x * x + y * y < MIN_DIST * MIN_DIST) ||
+                inDeadZone(x, y) ||
                 ((x < 0) || (x > CELL_HEIGHT * (menuSize - 1) +
                             CELL_WIDTH + strokeAdjust)) ||
                 ((y < 0) || (y > CELL_HEIGHT * menuSize))
@@ -129,12 +162,23 @@ public class CustomMenuView extends MenuExperimentView {
         // Note that this method is only ever called once per a menu
         // being displayed, so this randomization is not changed until
         // the menu exits the state machine and re-enters it.
-        randomVertPos = repeatPicker(menuSize, mRandom);
-        randomIndex = repeatPicker(menuSize, mRandom);
+        long seed = mSeedSource.nextLong();
+        layoutForSeed(seed, randomVertPos, randomIndex);
+        if (experimentMode()) {
+            getTrial().setLayoutSeed(seed);
+        }
+        mHitIndex.clear();
         for (int i = 0; i < menuSize; i++) {
-            inverseIndex[randomIndex[i]] = i;
-            inverseVertPos[randomVertPos[i]] = i;
+            int index = randomIndex[i];
+            int vertPos = randomVertPos[index];
+            mCellRects[4 * i] = CELL_HEIGHT * index;
+            mCellRects[4 * i + 1] = CELL_HEIGHT * vertPos;
+            mCellRects[4 * i + 2] = CELL_HEIGHT * index + CELL_WIDTH;
+            mCellRects[4 * i + 3] = CELL_HEIGHT * (vertPos + 1);
+            mHitIndex.addRect(shiftedIndex(i), mCellRects[4 * i], mCellRects[4 * i + 1],
+                    mCellRects[4 * i + 2], mCellRects[4 * i + 3]);
         }
+        mHitIndex.build();
         super.startSelection(point);
     }
 
@@ -146,17 +190,20 @@ public class CustomMenuView extends MenuExperimentView {
      */
     @Override
     protected void onDraw(Canvas canvas) {
-        int trueIndex = 0;
-        for (String item : getItems()) {
+        Paint textBrush = getTextPaint();
+        float textSize = textBrush.getTextSize();
+        for (int trueIndex = 0; trueIndex < menuSize; trueIndex++) {
             int index = randomIndex[trueIndex];
             int vertPos = randomVertPos[index];
             menuBox(canvas, index, vertPos, getBorderPaint());
+            LabelCache.Label label = getLabel(trueIndex);
+            textBrush.setTextSize(label.textSize);
             canvas.drawText(
-                    item, CELL_HEIGHT * index + TEXT_OFFSET / 4,
-                    CELL_HEIGHT * (vertPos + 1) - TEXT_OFFSET, getTextPaint()
+                    label.display, CELL_HEIGHT * index + TEXT_OFFSET / 4,
+                    CELL_HEIGHT * (vertPos + 1) - TEXT_OFFSET, textBrush
             );
-            trueIndex++;
         }
+        textBrush.setTextSize(textSize);
         // Draws highlighted menu option, note that unless the menu is of size 1,
         // then this never draws the menu option being hovered over, but whatever
         // the option ((size of menu) / 2 ) modulo (size of menu) in mItems
@@ -184,20 +231,37 @@ public class CustomMenuView extends MenuExperimentView {
         canvas.drawPath(path, brush);
     }
 
-    // This method returns an int array of length n with each entry
-    // randomly assigned a unique number (i.e. there are no repeats)
-    // between 0 inclusive and n exclusive.
-    private static int[] repeatPicker(int n, Random rng) {
-        int[] repeatArray = new int[n];
-        int[] probArray = new int[n];
-        for (int i = 0; i < n; i++) {
-            probArray[i] = i;
+    /**
+     * Fills vertPos and index (which must be the same length) with the permutations the menu
+     * uses for the given seed. Given the seed recorded with a trial this reproduces exactly
+     * the layout the participant saw.
+     *
+     * @param seed The layout seed recorded with the trial
+     * @param vertPos Filled with the vertical position of each column
+     * @param index Filled with the column of each item
+     */
+    public static void layoutForSeed(long seed, int[] vertPos, int[] index) {
+        long state = shuffle(vertPos, seed);
+        shuffle(index, state);
+    }
+
+    // Fills perm in place with a uniformly random permutation of 0 to perm.length - 1
+    // (Fisher-Yates driven by SplitMix64) and returns the generator state afterwards
+    private static long shuffle(int[] perm, long state) {
+        for (int i = 0; i < perm.length; i++) {
+            perm[i] = i;
         }
-        for (int i = 0; i < n; i++ ) {
-            int loser = rng.nextInt(n - i);
-            repeatArray[probArray[loser]] = i;
-            probArray[loser] = probArray[n - 1 - i];
+        for (int i = perm.length - 1; i > 0; i--) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z = z ^ (z >>> 31);
+            int j = (int) ((z >>> 1) % (i + 1));
+            int swap = perm[i];
+            perm[i] = perm[j];
+            perm[j] = swap;
         }
-        return repeatArray;
+        return state;
     }
 }
@@ -0,0 +1,48 @@
+package cse340.menus.views;
+
+import cse340.menus.MenuLayout;
+import cse340.menus.enums.CommitType;
+
+/**
+ * Commits an item once it has stayed highlighted for DWELL_MILLIS.
+ */
+class DwellCommitPolicy implements CommitPolicy {
+
+    /** How long an item has to stay highlighted to be committed */
+    private static final long DWELL_MILLIS = 500;
+
+    /** The highlighted item and when it was highlighted */
+    private int mItem;
+    private long mSince;
+
+    @Override
+    public void start(MenuLayout layout, float pressure, long timeMillis) {
+        mItem = -1;
+        mSince = timeMillis;
+    }
+
+    @Override
+    public int onMove(int item, float x, float y, float pressure, long timeMillis) {
+        if (item != mItem) {
+            mItem = item;
+            mSince = timeMillis;
+            return CONTINUE;
+        }
+        return item >= 0 && timeMillis - mSince >= DWELL_MILLIS ? item : CONTINUE;
+    }
+
+    @Override
+    public long getRecheckMillis(long timeMillis) {
+        if (mItem < 0) {
+            // Nothing highlighted, so only a move can start a dwell
+            return 0;
+        }
+        // When the highlighted item will have dwelled long enough
+        return Math.max(1, mSince + DWELL_MILLIS - timeMillis);
+    }
+
+    @Override
+    public CommitType getType() {
+        return CommitType.DWELL;
+    }
+}
@@ -0,0 +1,251 @@
+package cse340.menus.views;
+
+import java.util.Arrays;
+
+/**
+ * Finds which item is under a point for menus with arbitrary layouts. Items are added as
+ * rectangles, polygons or annular sectors, then build() sorts them into a uniform grid so
+ * that query() only has to test the few shapes overlapping the grid cell the point is in.
+ *
+ * Adding shapes may allocate while the index grows, but clear(), build() and query() do not
+ * allocate once the index has reached its working size, so a menu can rebuild it every time
+ * its layout changes.
+ */
+public class HitTestIndex {
+
+    /** Kinds of shape */
+    private static final int RECT = 0;
+    private static final int POLYGON = 1;
+    private static final int SECTOR = 2;
+
+    /** Number of grid cells along each side of the index */
+    private static final int GRID_SIZE = 8;
+
+    /** Number of shapes added since the last clear() */
+    private int mCount;
+
+    /** The kind and id of each shape */
+    private int[] mKinds;
+    private int[] mIds;
+
+    /** Bounding box of each shape (left, top, right, bottom) */
+    private float[] mBounds;
+
+    /** Where each shape's extra parameters (polygon vertices, sector angles) start */
+    private int[] mParamStart;
+    private float[] mParams;
+    private int mParamCount;
+
+    /** Bounds of the whole index, and the size of one grid cell */
+    private float mLeft, mTop, mRight, mBottom, mCellWidth, mCellHeight;
+
+    /** For each grid cell, the range of mCellShapes holding the shapes that overlap it */
+    private final int[] mCellStart = new int[GRID_SIZE * GRID_SIZE + 1];
+    private int[] mCellShapes = new int[0];
+
+    /**
+     * Constructor
+     *
+     * @param capacity How many shapes to make room for up front
+     */
+    public HitTestIndex(int capacity) {
+        capacity = Math.max(capacity, 1);
+        mKinds = new int[capacity];
+        mIds = new int[capacity];
+        mBounds = new float[4 * capacity];
+        mParamStart = new int[capacity];
+        mParams = new float[6 * capacity];
+    }
+
+    /**
+     * Remove every shape. The index must be built again before it is queried.
+     */
+    public void clear() {
+        mCount = 0;
+        mParamCount = 0;
+        Arrays.fill(mCellStart, 0);
+    }
+
+    /**
+     * Add a rectangle covering [left, right) x [top, bottom).
+     * @param id The value query() returns for points in this rectangle
+     */
+    public void addRect(int id, float left, float top, float right, float bottom) {
+        addShape(RECT, id, left, top, right, bottom, 0);
+    }
+
+    /**
+     * Add a simple polygon.
+     * @param id The value query() returns for points in this polygon
+     * @param xy The vertices as x0, y0, x1, y1, ...
+     */
+    public void addPolygon(int id, float[] xy) {
+        float left = Float.MAX_VALUE, top = Float.MAX_VALUE;
+        float right = -Float.MAX_VALUE, bottom = -Float.MAX_VALUE;
+        for (int i = 0; i < xy.length; i += 2) {
+            left = Math.min(left, xy[i]);
+            right = Math.max(right, xy[i]);
+            top = Math.min(top, xy[i + 1]);
+            bottom = Math.max(bottom, xy[i + 1]);
+        }
+        int start = addShape(POLYGON, id, left, top, right, bottom, xy.length + 1);
+        mParams[start] = xy.length / 2;
+        System.arraycopy(xy, 0, mParams, start + 1, xy.length);
+    }
+
+    /**
+     * Add a ring segment. Angles are in degrees, clockwise from east like Canvas.drawArc.
+     * @param id The value query() returns for points in this sector
+     */
+    public void addSector(int id, float centerX, float centerY, float innerRadius,
+                          float outerRadius, float startAngle, float sweepAngle) {
+        int start = addShape(SECTOR, id, centerX - outerRadius, centerY - outerRadius,
+                centerX + outerRadius, centerY + outerRadius, 6);
+        mParams[start] = centerX;
+        mParams[start + 1] = centerY;
+        mParams[start + 2] = innerRadius;
+        mParams[start + 3] = outerRadius;
+        mParams[start + 4] = startAngle;
+        mParams[start + 5] = sweepAngle;
+    }
+
+    // Stores the common parts of a shape and returns where its parameters should go
+    private int addShape(int kind, int id, float left, float top, float right, float bottom,
+                         int params) {
+        if (mCount == mKinds.length) {
+            int capacity = 2 * mKinds.length;
+            mKinds = Arrays.copyOf(mKinds, capacity);
+            mIds = Arrays.copyOf(mIds, capacity);
+            mBounds = Arrays.copyOf(mBounds, 4 * capacity);
+            mParamStart = Arrays.copyOf(mParamStart, capacity);
+        }
+        if (mParamCount + params > mParams.length) {
+            mParams = Arrays.copyOf(mParams, Math.max(2 * mParams.length, mParamCount + params));
+        }
+        mKinds[mCount] = kind;
+        mIds[mCount] = id;
+        mBounds[4 * mCount] = left;
+        mBounds[4 * mCount + 1] = top;
+        mBounds[4 * mCount + 2] = right;
+        mBounds[4 * mCount + 3] = bottom;
+        mParamStart[mCount] = mParamCount;
+        mCount++;
+
+        int start = mParamCount;
+        mParamCount += params;
+        return start;
+    }
+
+    /**
+     * Sort the shapes into the grid. Call this after adding shapes and before querying.
+     */
+    public void build() {
+        mLeft = mTop = Float.MAX_VALUE;
+        mRight = mBottom = -Float.MAX_VALUE;
+        for (int i = 0; i < mCount; i++) {
+            mLeft = Math.min(mLeft, mBounds[4 * i]);
+            mTop = Math.min(mTop, mBounds[4 * i + 1]);
+            mRight = Math.max(mRight, mBounds[4 * i + 2]);
+            mBottom = Math.max(mBottom, mBounds[4 * i + 3]);
+        }
+        mCellWidth = Math.max((mRight - mLeft) / GRID_SIZE, Float.MIN_NORMAL);
+        mCellHeight = Math.max((mBottom - mTop) / GRID_SIZE, Float.MIN_NORMAL);
+
+        // First count the shapes overlapping each cell, then turn the counts into offsets
+        Arrays.fill(mCellStart, 0);
+        for (int i = 0; i < mCount; i++) {
+            for (int row = row(mBounds[4 * i + 1]); row <= row(mBounds[4 * i + 3]); row++) {
+                for (int col = col(mBounds[4 * i]); col <= col(mBounds[4 * i + 2]); col++) {
+                    mCellStart[row * GRID_SIZE + col + 1]++;
+                }
+            }
+        }
+        for (int c = 1; c < mCellStart.length; c++) {
+            mCellStart[c] += mCellStart[c - 1];
+        }
+        if (mCellShapes.length < mCellStart[mCellStart.length - 1]) {
+            mCellShapes = new int[mCellStart[mCellStart.length - 1]];
+        }
+
+        // Then fill each cell's range, using the start of the next cell as a cursor
+        for (int i = 0; i < mCount; i++) {
+            for (int row = row(mBounds[4 * i + 1]); row <= row(mBounds[4 * i + 3]); row++) {
+                for (int col = col(mBounds[4 * i]); col <= col(mBounds[4 * i + 2]); col++) {
+                    mCellShapes[mCellStart[row * GRID_SIZE + col]++] = i;
+                }
+            }
+        }
+        for (int c = mCellStart.length - 1; c > 0; c--) {
+            mCellStart[c] = mCellStart[c - 1];
+        }
+        mCellStart[0] = 0;
+    }
+
+    /**
+     * Find the shape under a point. If shapes overlap, the one added first wins.
+     *
+     * @return the id of the shape under the point or -1 if none.
+     */
+    public int query(float x, float y) {
+        if (mCount == 0 || x < mLeft || x > mRight || y < mTop || y > mBottom) {
+            return -1;
+        }
+        int cell = row(y) * GRID_SIZE + col(x);
+        for (int c = mCellStart[cell]; c < mCellStart[cell + 1]; c++) {
+            int shape = mCellShapes[c];
+            if (contains(shape, x, y)) {
+                return mIds[shape];
+            }
+        }
+        return -1;
+    }
+
+    // The grid column and row containing a coordinate, clamped to the grid
+    private int col(float x) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) ((x - mLeft) / mCellWidth)));
+    }
+
+    private int row(float y) {
+        return Math.max(0, Math.min(GRID_SIZE - 1, (int) ((y - mTop) / mCellHeight)));
+    }
+
+    // Exact test of one shape
+    private boolean contains(int shape, float x, float y) {
+        int b = 4 * shape;
+        if (x < mBounds[b] || x >= mBounds[b + 2] || y < mBounds[b + 1] || y >= mBounds[b + 3]) {
+            return false;
+        }
+        int p = mParamStart[shape];
+        switch (mKinds[shape]) {
+            case RECT:
+                return true;
+            case POLYGON: {
+                // Even-odd rule: count the edges crossed by a ray going right from the point
+                int n = (int) mParams[p];
+                boolean inside = false;
+                for (int i = 0, j = n - 1; i < n; j = i++) {
+                    float xi = mParams[p + 1 + 2 * i], yi = mParams[p + 2 + 2 * i];
+                    float xj = mParams[p + 1 + 2 * j], yj = mParams[p + 2 + 2 * j];
+                    if ((yi > y) != (yj > y) && x < (xj - xi) * (y - yi) / (yj - yi) + xi) {
+                        inside = !inside;
+                    }
+                }
+                return inside;
+            }
+            case SECTOR: {
+                float dx = x - mParams[p];
+                float dy = y - mParams[p + 1];
+                float distSq = dx * dx + dy * dy;
+                if (distSq < mParams[p + 2] * mParams[p + 2]
+                        || distSq > mParams[p + 3] * mParams[p + 3]) {
+                    return false;
+                }
+                double angle = Math.toDegrees(Math.atan2(dy, dx)) - mParams[p + 4];
+                angle = ((angle % 360) + 360) % 360;
+                return angle < mParams[p + 5];
+            }
+            default:
+                return false;
+        }
+    }
+}
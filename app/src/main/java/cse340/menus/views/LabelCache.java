@@ -0,0 +1,189 @@
+package cse340.menus.views;
+
+import android.graphics.Paint;
+import android.graphics.Typeface;
+import android.text.TextPaint;
+import android.text.TextUtils;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A process-wide cache of measured menu labels, shared by every menu view. The same labels
+ * ("North", "Bookmark", ...) come up again and again across trials, so each one is measured
+ * (and ellipsized to fit, if asked) once per paint configuration instead of every time a
+ * menu is created or drawn. The least recently used labels are evicted once the cache is
+ * full.
+ */
+public final class LabelCache {
+
+    /** How many labels to keep */
+    private static final int MAX_ENTRIES = 256;
+
+    /** The cache, in least recently used order */
+    private static final Map<Key, Label> sCache = new LinkedHashMap<Key, Label>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Label> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    /** How many lookups were found in the cache, and how many had to be measured */
+    private static final AtomicInteger sHits = new AtomicInteger();
+    private static final AtomicInteger sMisses = new AtomicInteger();
+
+    private LabelCache() {
+    }
+
+    /** A measured label */
+    public static class Label {
+        /** The full text */
+        public final String text;
+
+        /** The width of the full text */
+        public final float width;
+
+        /** The advance of each character of the full text */
+        public final float[] advances;
+
+        /** The text to draw: the full text, or an ellipsized version if it didn't fit */
+        public final String display;
+
+        /** The width of display */
+        public final float displayWidth;
+
+        /** The width display was fit to, or 0 if it wasn't fit */
+        public final float maxWidth;
+
+        /** The text size the label was measured at, and should be drawn at */
+        public final float textSize;
+
+        Label(String text, Paint paint, float maxWidth) {
+            this.text = text;
+            this.textSize = paint.getTextSize();
+            this.advances = new float[text.length()];
+            paint.getTextWidths(text, advances);
+            float sum = 0;
+            for (float advance : advances) {
+                sum += advance;
+            }
+            this.width = sum;
+            this.maxWidth = maxWidth;
+
+            if (maxWidth > 0 && width > maxWidth) {
+                this.display = TextUtils.ellipsize(text, new TextPaint(paint), maxWidth,
+                        TextUtils.TruncateAt.END).toString();
+                this.displayWidth = paint.measureText(display);
+            } else {
+                this.display = text;
+                this.displayWidth = width;
+            }
+        }
+    }
+
+    /**
+     * Get a measured label, measuring it if it isn't cached yet.
+     *
+     * @param text The label's text
+     * @param paint The paint it will be drawn with
+     * @param maxWidth The width to ellipsize the text to, or 0 to never ellipsize
+     * @return the measured label
+     */
+    public static synchronized Label get(String text, Paint paint, float maxWidth) {
+        Key key = new Key(text, paint, maxWidth);
+        Label label = sCache.get(key);
+        if (label != null) {
+            sHits.incrementAndGet();
+            return label;
+        }
+        sMisses.incrementAndGet();
+        label = new Label(text, paint, maxWidth);
+        sCache.put(key, label);
+        return label;
+    }
+
+    /**
+     * Get a label that fits in maxWidth. If the text is too wide at the paint's size it is
+     * shrunk, down to minTextSize, and only ellipsized if it still doesn't fit. The size is
+     * found by binary search over whole text sizes using the cached width (text width grows
+     * linearly with size), so the text is measured at most once more. The same inputs
+     * always give the same label.
+     *
+     * @param text The label's text
+     * @param paint The paint it will be drawn with, at the largest size to use
+     * @param maxWidth The width available for the label
+     * @param minTextSize The smallest text size to shrink to
+     * @return the fitted label. Draw it at label.textSize.
+     */
+    public static Label fit(String text, Paint paint, float maxWidth, float minTextSize) {
+        Label full = get(text, paint, 0);
+        if (full.width <= maxWidth || full.width == 0) {
+            return full;
+        }
+
+        // The largest whole size in [minTextSize, textSize) whose width fits
+        int low = (int) Math.ceil(minTextSize);
+        int high = (int) Math.floor(full.textSize) - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (full.width * mid / full.textSize <= maxWidth) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+
+        Paint sized = new Paint(paint);
+        sized.setTextSize(Math.max(low, 1));
+        return get(text, sized, maxWidth);
+    }
+
+    public static int getHits() {
+        return sHits.get();
+    }
+
+    public static int getMisses() {
+        return sMisses.get();
+    }
+
+    /** Everything about the text and paint that changes how a label measures */
+    private static class Key {
+        private final String mText;
+        private final float mTextSize, mTextScaleX, mLetterSpacing, mMaxWidth;
+        private final Typeface mTypeface;
+        private final int mFlags;
+        private final int mHash;
+
+        Key(String text, Paint paint, float maxWidth) {
+            mText = text;
+            mTextSize = paint.getTextSize();
+            mTextScaleX = paint.getTextScaleX();
+            mLetterSpacing = paint.getLetterSpacing();
+            mTypeface = paint.getTypeface();
+            mFlags = paint.getFlags();
+            mMaxWidth = maxWidth;
+            mHash = Arrays.hashCode(new Object[] {
+                    mText, mTextSize, mTextScaleX, mLetterSpacing, mTypeface, mFlags, mMaxWidth
+            });
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return mText.equals(other.mText) && mTextSize == other.mTextSize
+                    && mTextScaleX == other.mTextScaleX && mLetterSpacing == other.mLetterSpacing
+                    && mFlags == other.mFlags && mMaxWidth == other.mMaxWidth
+                    && (mTypeface == null ? other.mTypeface == null : mTypeface.equals(other.mTypeface));
+        }
+
+        @Override
+        public int hashCode() {
+            return mHash;
+        }
+    }
+}
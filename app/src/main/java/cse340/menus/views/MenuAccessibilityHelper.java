@@ -0,0 +1,181 @@
+package cse340.menus.views;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
+import android.support.v4.widget.ExploreByTouchHelper;
+import android.view.accessibility.AccessibilityManager;
+
+import java.util.Arrays;
+import java.util.List;
+
+import cse340.menus.MenuLayout;
+
+/**
+ * Exposes a menu's items to screen readers and switch access as virtual views, one per item,
+ * so they can be explored by touch and selected with an accessibility action.
+ *
+ * The virtual view id of an item is its position in the menu. The nodes are generated from
+ * the layout the menu recorded when the selection started, and each position's cell or
+ * sector and bounds are looked up from arrays, so finding a node is O(1).
+ *
+ * Highlight changes are announced, but no more than once per ANNOUNCE_INTERVAL_MILLIS: the
+ * latest highlight is announced at the end of the interval and the ones in between are
+ * dropped, so a fast swipe doesn't flood the accessibility event queue.
+ */
+class MenuAccessibilityHelper extends ExploreByTouchHelper {
+
+    /** The shortest time between two announcements */
+    private static final long ANNOUNCE_INTERVAL_MILLIS = 150;
+
+    private final MenuExperimentView mMenu;
+    private final AccessibilityManager mManager;
+
+    /** The layout the nodes are generated from, or null to describe the menu when needed */
+    private MenuLayout mLayout;
+
+    /** The cell or sector of each position (-1 if it has none) and its bounds, or null */
+    private int[] mShapes;
+    private float[] mBounds;
+
+    /** Reused for layout queries and node bounds */
+    private final float[] mPoint = new float[4];
+    private final Rect mRect = new Rect();
+
+    /** The highlight waiting to be announced, and when the last announcement was made */
+    private int mPendingHighlight = -1;
+    private long mLastAnnounceMillis;
+    private boolean mAnnouncePosted;
+
+    private final Runnable mAnnounce = new Runnable() {
+        @Override
+        public void run() {
+            mAnnouncePosted = false;
+            mLastAnnounceMillis = SystemClock.uptimeMillis();
+            List<String> items = mMenu.getItems();
+            if (mPendingHighlight >= 0 && mPendingHighlight < items.size()) {
+                mMenu.announceForAccessibility(items.get(mPendingHighlight));
+            }
+        }
+    };
+
+    MenuAccessibilityHelper(MenuExperimentView menu) {
+        super(menu);
+        mMenu = menu;
+        mManager = (AccessibilityManager) menu.getContext()
+                .getSystemService(Context.ACCESSIBILITY_SERVICE);
+    }
+
+    /**
+     * Regenerates the nodes from a new layout.
+     * @param layout The menu's layout, or null to describe the menu when a node is needed
+     */
+    void setLayout(MenuLayout layout) {
+        mLayout = layout;
+        mShapes = null;
+        invalidateRoot();
+    }
+
+    /**
+     * Announces a highlight change, throttled to one announcement per interval.
+     * @param position The highlighted position, or -1
+     */
+    void onHighlightChanged(int position) {
+        mPendingHighlight = position;
+        if (mAnnouncePosted || position == -1 || !mManager.isEnabled()) {
+            return;
+        }
+        mAnnouncePosted = true;
+        long wait = mLastAnnounceMillis + ANNOUNCE_INTERVAL_MILLIS - SystemClock.uptimeMillis();
+        mMenu.postDelayed(mAnnounce, Math.max(0, wait));
+    }
+
+    /** Moves accessibility focus to the menu's first item, so a screen reader reads it */
+    void focusFirstItem() {
+        ensureShapes();
+        for (int position = 0; position < mShapes.length; position++) {
+            if (mShapes[position] != -1) {
+                getAccessibilityNodeProvider(mMenu).performAction(position,
+                        AccessibilityNodeInfoCompat.ACTION_ACCESSIBILITY_FOCUS, null);
+                return;
+            }
+        }
+    }
+
+    /** Stops a pending announcement */
+    void cancelAnnouncement() {
+        mMenu.removeCallbacks(mAnnounce);
+        mAnnouncePosted = false;
+    }
+
+    // Works out the cell or sector and bounds of each position, if not done yet
+    private void ensureShapes() {
+        if (mShapes != null) {
+            return;
+        }
+        if (mLayout == null) {
+            mLayout = mMenu.describeLayout();
+        }
+        int size = mMenu.getItems().size();
+        mShapes = new int[size];
+        mBounds = new float[4 * size];
+        Arrays.fill(mShapes, -1);
+        for (int shape = 0; shape < mLayout.size(); shape++) {
+            int position = mMenu.getPositionForShape(shape);
+            if (position >= 0 && position < size) {
+                mShapes[position] = shape;
+                mLayout.getShapeBounds(shape, mPoint);
+                System.arraycopy(mPoint, 0, mBounds, 4 * position, 4);
+            }
+        }
+    }
+
+    @Override
+    protected int getVirtualViewAt(float x, float y) {
+        ensureShapes();
+        int shape = mLayout.shapeAt(x, y);
+        return shape == -1 ? INVALID_ID : mMenu.getPositionForShape(shape);
+    }
+
+    @Override
+    protected void getVisibleVirtualViews(List<Integer> virtualViewIds) {
+        ensureShapes();
+        for (int position = 0; position < mShapes.length; position++) {
+            if (mShapes[position] != -1) {
+                virtualViewIds.add(position);
+            }
+        }
+    }
+
+    @Override
+    protected void onPopulateNodeForVirtualView(int virtualViewId,
+                                                AccessibilityNodeInfoCompat node) {
+        ensureShapes();
+        int b = 4 * virtualViewId;
+        mRect.set((int) Math.floor(mBounds[b]), (int) Math.floor(mBounds[b + 1]),
+                (int) Math.ceil(mBounds[b + 2]), (int) Math.ceil(mBounds[b + 3]));
+        node.setBoundsInParent(mRect);
+        node.setText(mMenu.getItems().get(virtualViewId));
+        node.setSelected(virtualViewId == mMenu.getCurrentIndex());
+        node.setClickable(true);
+        node.addAction(AccessibilityNodeInfoCompat.ACTION_CLICK);
+    }
+
+    @Override
+    protected boolean onPerformActionForVirtualView(int virtualViewId, int action,
+                                                    Bundle arguments) {
+        if (action != AccessibilityNodeInfoCompat.ACTION_CLICK) {
+            return false;
+        }
+        long actionNanos = System.nanoTime();
+        ensureShapes();
+        if (mShapes[virtualViewId] == -1) {
+            return false;
+        }
+        // Select as if the finger was released in the middle of the item
+        mLayout.getShapeCenter(mShapes[virtualViewId], mPoint);
+        return mMenu.selectForAccessibility(virtualViewId, mPoint[0], mPoint[1], actionNanos);
+    }
+}
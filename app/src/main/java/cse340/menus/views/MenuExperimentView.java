@@ -2,23 +2,85 @@ package cse340.menus.views;
 
 import android.content.Context;
 import android.graphics.PointF;
+import android.graphics.Rect;
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
+import android.view.Choreographer;
+import android.view.KeyEvent;
 import android.view.MotionEvent;
 import android.widget.Toast;
 
 import java.util.List;
 
+import cse340.menus.DwellTracker;
 import cse340.menus.ExperimentTrial;
+import cse340.menus.MenuLayout;
+import cse340.menus.PerformanceCounters;
+import cse340.menus.TouchSamples;
+import cse340.menus.TrialListener;
+import cse340.menus.enums.CommitType;
 import cse340.menus.enums.State;
 
 public abstract class MenuExperimentView extends AbstractMenuExperimentView {
 
+    /** Where the finger hesitated during the current selection */
+    private DwellTracker mDwell;
+
+    /** Every touch sample of the current selection */
+    private TouchSamples mSamples;
+
+    /**
+     * Whether moves are handled once per display frame (with the latest sample) instead of
+     * once per event. Every sample is still logged either way.
+     */
+    private boolean mFrameAligned;
+
+    /** The latest move not yet handled in frame aligned mode, and whether a frame is booked */
+    private float mPendingX, mPendingY, mPendingPressure;
+    private long mPendingTime;
+    private boolean mFramePending;
+
+    /** Reused for hit testing moves */
+    private final PointF mHitPoint = new PointF();
+
+    /** Handles the latest move once per frame in frame aligned mode */
+    private final Choreographer.FrameCallback mFrameCallback = frameTimeNanos -> {
+        mFramePending = false;
+        if (mState == State.SELECTING) {
+            handleMove(hitTest(mPendingX, mPendingY), mPendingX, mPendingY, mPendingPressure,
+                    mPendingTime);
+        }
+    };
+
+    /** Decides whether to commit the selection before the finger is lifted */
+    private CommitPolicy mCommitPolicy = CommitPolicy.forType(CommitType.RELEASE);
+
+    /** The last move of the current selection, for rechecking mCommitPolicy */
+    private float mLastX, mLastY, mLastPressure;
+
+    /** Asks mCommitPolicy again when the finger hasn't moved for a while */
+    private final Runnable mRecheck = () -> {
+        if (mState == State.SELECTING) {
+            checkCommit(mLastX, mLastY, mLastPressure, SystemClock.uptimeMillis());
+        }
+    };
+
+    /** Exposes the items to screen readers and switch access */
+    private final MenuAccessibilityHelper mAccessibility = new MenuAccessibilityHelper(this);
+
+    /** When an accessibility action selected the current item (System.nanoTime), or 0 */
+    private long mAccessibilityActionNanos;
+
     /**
      * Constructor
      *
      * @param context
      * @param trial Experiment trial (contains a list of items)
      */
-    public MenuExperimentView(Context context, ExperimentTrial trial) { super(context, trial); }
+    public MenuExperimentView(Context context, ExperimentTrial trial) {
+        super(context, trial);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibility);
+    }
 
     /**
      * Constructor
@@ -26,7 +88,10 @@ public abstract class MenuExperimentView extends AbstractMenuExperimentView {
      * @param context
      * @param items Items to display in menu
      */
-    public MenuExperimentView(Context context, List<String> items) { super(context, items); }
+    public MenuExperimentView(Context context, List<String> items) {
+        super(context, items);
+        ViewCompat.setAccessibilityDelegate(this, mAccessibility);
+    }
 
     /**
      * Calculates the index of the menu item using the current finger position
@@ -40,6 +105,18 @@ public abstract class MenuExperimentView extends AbstractMenuExperimentView {
      */
     protected abstract int essentialGeometry(PointF p);
 
+    // Asks essentialGeometry about a point, timing it for the performance overlay when it is on
+    private int hitTest(float x, float y) {
+        mHitPoint.set(x, y);
+        if (!PerformanceCounters.isEnabled()) {
+            return essentialGeometry(mHitPoint);
+        }
+        long start = System.nanoTime();
+        int item = essentialGeometry(mHitPoint);
+        PerformanceCounters.recordHitTest(System.nanoTime() - start);
+        return item;
+    }
+
     /***
      * Handles user's touch input on the screen. It should follow the state machine specified
      * in the spec.
@@ -48,21 +125,39 @@ public abstract class MenuExperimentView extends AbstractMenuExperimentView {
      */
     @Override
     public boolean onTouchEvent(MotionEvent event) {
-        int menuItem = essentialGeometry(event);
-
-        PointF point = new PointF(event.getX(), event.getY());
-
         switch (mState) {
             case START:
-                startSelection(point); // Note State changes in this call
+                if (event.getAction() != MotionEvent.ACTION_DOWN) {
+                    // The rest of a gesture whose selection was committed early
+                    return false;
+                }
+                beginSelection(new PointF(event.getX(), event.getY()), event.getPressure(),
+                        event.getEventTime());
+                mSamples.add(event);
                 return true;
             case SELECTING:
                 if (event.getAction() == MotionEvent.ACTION_UP) {
-                    updateModel(menuItem);
-                    endSelection(menuItem, point);
+                    mSamples.add(event);
+                    cancelPendingFrame();
+                    commit(hitTest(event.getX(), event.getY()), new PointF(event.getX(), event.getY()),
+                            event.getEventTime());
                     return true;
                 } else if (event.getAction() == MotionEvent.ACTION_MOVE) {
-                    updateModel(menuItem);
+                    mSamples.add(event);
+                    if (mFrameAligned) {
+                        // Only the latest position matters, it is handled on the next frame
+                        mPendingX = event.getX();
+                        mPendingY = event.getY();
+                        mPendingPressure = event.getPressure();
+                        mPendingTime = event.getEventTime();
+                        if (!mFramePending) {
+                            mFramePending = true;
+                            Choreographer.getInstance().postFrameCallback(mFrameCallback);
+                        }
+                    } else {
+                        handleMove(hitTest(event.getX(), event.getY()), event.getX(), event.getY(),
+                                event.getPressure(), event.getEventTime());
+                    }
                     return true;
                 }
                 // Note there is no break as the return calls function as those
@@ -74,6 +169,182 @@ public abstract class MenuExperimentView extends AbstractMenuExperimentView {
         }
     }
 
+    // Starts a selection at a point relative to the menu's (0,0), and everything that records it
+    private void beginSelection(PointF point, float pressure, long timeMillis) {
+        if (PerformanceCounters.isEnabled()) {
+            PerformanceCounters.startGesture();
+        }
+        // Note State changes in this call
+        startSelection(point);
+        mDwell = new DwellTracker(getItems().size(), timeMillis);
+        mSamples = new TouchSamples(timeMillis);
+        mCommitPolicy.start(experimentMode() ? getTrial().getLayout() : describeLayout(),
+                pressure, timeMillis);
+        if (experimentMode()) {
+            getTrial().setDwell(mDwell);
+            getTrial().setCommitType(mCommitPolicy.getType());
+            getTrial().setTouchSamples(mSamples, mFrameAligned);
+        }
+    }
+
+    // Moves the highlight to the item under a move and asks the commit policy about it
+    private void handleMove(int menuItem, float x, float y, float pressure, long timeMillis) {
+        if (menuItem != getCurrentIndex()) {
+            if (PerformanceCounters.isEnabled()) {
+                PerformanceCounters.recordHighlightChange(timeMillis);
+            }
+            mAccessibility.onHighlightChanged(menuItem);
+        }
+        updateModel(menuItem);
+        mDwell.update(getOriginalIndex(getCurrentIndex()), timeMillis);
+        checkCommit(x, y, pressure, timeMillis);
+    }
+
+    private void cancelPendingFrame() {
+        if (mFramePending) {
+            Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+            mFramePending = false;
+        }
+    }
+
+    /**
+     * Turn frame aligned input on or off. It applies from the next move.
+     * @param frameAligned true to handle moves once per display frame
+     */
+    public void setFrameAlignedInput(boolean frameAligned) {
+        mFrameAligned = frameAligned;
+    }
+
+    public boolean isFrameAlignedInput() {
+        return mFrameAligned;
+    }
+
+    /**
+     * Change how selections are committed. It applies from the next selection.
+     * @param commitPolicy The policy to use
+     */
+    public void setCommitPolicy(CommitPolicy commitPolicy) {
+        mCommitPolicy = commitPolicy;
+    }
+
+    public CommitPolicy getCommitPolicy() {
+        return mCommitPolicy;
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mRecheck);
+        cancelPendingFrame();
+        mAccessibility.cancelAnnouncement();
+        super.onDetachedFromWindow();
+    }
+
+    //region Accessibility
+    @Override
+    protected boolean dispatchHoverEvent(MotionEvent event) {
+        return mAccessibility.dispatchHoverEvent(event) || super.dispatchHoverEvent(event);
+    }
+
+    @Override
+    public boolean dispatchKeyEvent(KeyEvent event) {
+        return mAccessibility.dispatchKeyEvent(event) || super.dispatchKeyEvent(event);
+    }
+
+    @Override
+    protected void onFocusChanged(boolean gainFocus, int direction, Rect previouslyFocusedRect) {
+        super.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+        mAccessibility.onFocusChanged(gainFocus, direction, previouslyFocusedRect);
+    }
+
+    /**
+     * Which position in the menu a cell or sector of describeLayout() selects. Menus whose
+     * cells select a different item than the one they show override this.
+     * @param shape The cell or sector
+     * @return the position it selects
+     */
+    protected int getPositionForShape(int shape) {
+        return shape;
+    }
+
+    /**
+     * Opens the menu for an accessibility action, as if a finger came down at a point of the
+     * parent, for example when a screen reader double taps the activity's layout (screen
+     * readers consume the touches that would open it). Accessibility focus then moves to
+     * the first item, and an item is selected by activating it (see selectForAccessibility).
+     *
+     * @param x Where to open the menu, in the parent's coordinates
+     * @param y Where to open the menu, in the parent's coordinates
+     * @return false if a selection is already in progress
+     */
+    public boolean openForAccessibility(float x, float y) {
+        if (mState != State.START) {
+            return false;
+        }
+        final long actionNanos = System.nanoTime();
+        if (experimentMode()) {
+            // The menu is shown from the next frame on
+            final ExperimentTrial trial = getTrial();
+            Choreographer.getInstance().postFrameCallback(frameTimeNanos ->
+                    trial.setAccessibilityOpenLatency((System.nanoTime() - actionNanos) / 1e6f));
+        }
+        setX(x);
+        setY(y);
+        // No finger, so no pressure to commit by
+        beginSelection(new PointF(0, 0), 0, SystemClock.uptimeMillis());
+        // Once subclasses have finished showing the menu
+        post(mAccessibility::focusFirstItem);
+        return true;
+    }
+
+    /**
+     * Selects an item for an accessibility action, as if the finger was released on it.
+     *
+     * @param menuItem The position of the item in the menu
+     * @param x Where in the item to release, relative to the menu's (0,0)
+     * @param y Where in the item to release, relative to the menu's (0,0)
+     * @param actionNanos When the action was performed (System.nanoTime)
+     * @return false if no selection is in progress
+     */
+    boolean selectForAccessibility(int menuItem, float x, float y, long actionNanos) {
+        if (mState != State.SELECTING) {
+            return false;
+        }
+        mAccessibilityActionNanos = actionNanos;
+        commit(menuItem, new PointF(x, y), SystemClock.uptimeMillis());
+        return true;
+    }
+    //endregion
+
+    // Asks the commit policy about the latest move, committing if it says so
+    private void checkCommit(float x, float y, float pressure, long timeMillis) {
+        removeCallbacks(mRecheck);
+        int item = mCommitPolicy.onMove(getCurrentIndex(), x, y, pressure, timeMillis);
+        if (item != CommitPolicy.CONTINUE) {
+            commit(item, new PointF(x, y), timeMillis);
+            return;
+        }
+        long recheck = mCommitPolicy.getRecheckMillis(SystemClock.uptimeMillis());
+        if (recheck > 0) {
+            mLastX = x;
+            mLastY = y;
+            mLastPressure = pressure;
+            postDelayed(mRecheck, recheck);
+        }
+    }
+
+    // Ends the selection with the given item
+    private void commit(int menuItem, PointF point, long timeMillis) {
+        removeCallbacks(mRecheck);
+        cancelPendingFrame();
+        updateModel(menuItem);
+        mDwell.update(getOriginalIndex(getCurrentIndex()), timeMillis);
+        mDwell.finish(timeMillis);
+        endSelection(menuItem, point);
+        if (PerformanceCounters.isEnabled()) {
+            PerformanceCounters.endGesture();
+        }
+    }
+
     //////////////////////////////////////////////////
     // These methods are taken directly from the spec's description of the PPS
     //////////////////////////////////////////////////
@@ -85,9 +356,14 @@ public abstract class MenuExperimentView extends AbstractMenuExperimentView {
      */
     protected void startSelection(PointF point) {
         mState = State.SELECTING;
+        MenuLayout layout = null;
         if (experimentMode()) {
             getTrial().startTrial(point);
+            layout = describeLayout();
+            getTrial().setLayout(layout);
         }
+        // Outside experiments the layout is only described if a screen reader asks for it
+        mAccessibility.setLayout(layout);
         setVisibility(VISIBLE);
     }
 
@@ -103,14 +379,35 @@ public abstract class MenuExperimentView extends AbstractMenuExperimentView {
             Toast.makeText(getContext(), "Selected " + getItem(), Toast.LENGTH_SHORT).show();
         }
         if (experimentMode()) {
-            getTrial().endTrial(point, menuItem);
-            getTrialListener().onTrialCompleted(getTrial());
+            getTrial().endTrial(point, getOriginalIndex(menuItem));
+            if (mAccessibilityActionNanos != 0) {
+                // The selection takes effect with the next frame, so the latency is measured
+                // to it, and the trial is only recorded then
+                final ExperimentTrial trial = getTrial();
+                final TrialListener listener = getTrialListener();
+                final long actionNanos = mAccessibilityActionNanos;
+                Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+                    trial.setAccessibilityLatency((System.nanoTime() - actionNanos) / 1e6f);
+                    listener.onTrialCompleted(trial);
+                });
+            } else {
+                getTrialListener().onTrialCompleted(getTrial());
+            }
         }
-        setCurrentIndex(-1);
+        mAccessibilityActionNanos = 0;
+        // Through updateModel, so menus that draw the highlight separately clear it too
+        clearHighlight();
         setVisibility(INVISIBLE);
         mState = State.START;
     }
 
+    /**
+     * Removes the highlight, so the menu doesn't show a stale one the next time it opens.
+     */
+    public void clearHighlight() {
+        updateModel(-1);
+    }
+
     /**
      * Change the model of the menu and force a redraw, if the current selection has changed.
      * @param menuItem the menu item that is currently selected by the user
@@ -10,6 +10,7 @@ import android.view.ViewGroup;
 import java.util.List;
 
 import cse340.menus.ExperimentTrial;
+import cse340.menus.MenuLayout;
 import cse340.menus.enums.State;
 
 public class NormalMenuView extends MenuExperimentView {
@@ -76,7 +77,7 @@ public class NormalMenuView extends MenuExperimentView {
     /**
      * Calculates the index of the menu item using the current finger position
      * This is specific to your menu's geometry, so override it in your Pie and Normal menu classes
-     * If the finger has moved less than MIN_DIST, or is outside the bounds of the menu,
+     * If the finger is still in the dead zone, or is outside the bounds of the menu,
      * return -1.
      *
      * @param p the current location of the user's finger relative to the menu's (0,0).
@@ -91,12 +92,40 @@ public class NormalMenuView extends MenuExperimentView {
         return -1;
     }
 
+    /**
+     * Describes the normal menu: one column of cells with the touch point at the top left.
+     *
+     * @return the current layout of the menu
+     */
+    @Override
+    public MenuLayout describeLayout() {
+        float[] cells = new float[4 * menuSize];
+        int[] items = new int[menuSize];
+        for (int i = 0; i < menuSize; i++) {
+            cells[4 * i] = 0;
+            cells[4 * i + 1] = CELL_HEIGHT * i;
+            cells[4 * i + 2] = CELL_WIDTH;
+            cells[4 * i + 3] = CELL_HEIGHT * (i + 1);
+            items[i] = getOriginalIndex(i);
+        }
+        return MenuLayout.cells(cells, items, 0, 0, 0, 0, getDeadZoneRadius(), getDeadZoneShape(),
+                mDisplayMetrics.widthPixels, mDisplayMetrics.heightPixels, mDisplayMetrics.density);
+    }
+
+    /**
+     * Labels start TEXT_OFFSET into the cell and must stay inside its border.
+     */
+    @Override
+    protected float getLabelWidth(int index) {
+        return CELL_WIDTH - TEXT_OFFSET - getBorderPaint().getStrokeWidth();
+    }
+
     // Returns true if the given x, y coordinates are outside of
     // the bounding box of the view. False otherwise.
     // Made for code clarity
     private boolean invalidSelection(float x, float y) {
         return
-                (x * x + y * y < MIN_DIST * MIN_DIST) ||
+                inDeadZone(x, y) ||
                 ((x < 0) || (x > CELL_WIDTH)) ||
                 ((y < 0) || (y > CELL_HEIGHT * menuSize))
         ;
@@ -112,15 +141,17 @@ public class NormalMenuView extends MenuExperimentView {
     protected void onDraw(Canvas canvas) {
         Paint textBrush = getTextPaint();
         Paint borderBrush = getBorderPaint();
-        int index = 0;
-        for (String item : getItems()) {
+        float textSize = textBrush.getTextSize();
+        for (int index = 0; index < menuSize; index++) {
             menuBox(canvas, index, borderBrush);
+            LabelCache.Label label = getLabel(index);
+            textBrush.setTextSize(label.textSize);
             canvas.drawText(
-                    item, TEXT_OFFSET,
+                    label.display, TEXT_OFFSET,
                     CELL_HEIGHT * index + TEXT_OFFSET, textBrush
             );
-            index++;
         }
+        textBrush.setTextSize(textSize);
         // Highlights the selected box
         if (getCurrentIndex() != -1) {
             borderBrush = getHighlightPaint();
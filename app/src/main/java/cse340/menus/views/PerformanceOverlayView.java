@@ -0,0 +1,134 @@
+package cse340.menus.views;
+
+import android.app.Activity;
+import android.content.Context;
+import android.graphics.Color;
+import android.graphics.Typeface;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.view.Choreographer;
+import android.view.FrameMetrics;
+import android.view.Gravity;
+import android.view.Window;
+import android.widget.FrameLayout;
+import android.widget.TextView;
+
+import cse340.menus.PerformanceCounters;
+
+/**
+ * A small text overlay for test mode showing how the menus are performing: the latest frame
+ * time, how long a highlight change takes to reach the screen, how long hit testing and drawing
+ * the menu take, how much a gesture allocates, and how the label cache is doing.
+ *
+ * The menus record into PerformanceCounters only while the overlay is attached. The overlay
+ * reads the counters every frame (to match highlight changes with the frame that draws them)
+ * but only updates its text a few times a second, so that it doesn't slow down what it measures.
+ */
+public class PerformanceOverlayView extends TextView {
+
+    /** How often the text is updated */
+    private static final long REFRESH_MILLIS = 250;
+
+    private static final long NANOS_PER_MILLI = 1000000;
+
+    /** The window whose frames are measured, and the thread FrameMetrics are delivered on */
+    private final Window mWindow;
+    private HandlerThread mMetricsThread;
+
+    /** When the text was last updated */
+    private long mLastRefreshMillis;
+
+    /** Reused to build the text */
+    private final StringBuilder mText = new StringBuilder();
+
+    /** Records how long each frame of the window took */
+    private final Window.OnFrameMetricsAvailableListener mMetricsListener =
+            (window, frameMetrics, dropCount) ->
+                    PerformanceCounters.recordFrame(
+                            frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION));
+
+    /** Runs every frame while attached */
+    private final Choreographer.FrameCallback mFrameCallback = new Choreographer.FrameCallback() {
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            long frameTimeMillis = frameTimeNanos / NANOS_PER_MILLI;
+            PerformanceCounters.onFrame(frameTimeMillis);
+            if (frameTimeMillis - mLastRefreshMillis >= REFRESH_MILLIS) {
+                mLastRefreshMillis = frameTimeMillis;
+                refresh();
+            }
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    };
+
+    /**
+     * Constructor
+     *
+     * @param context The activity whose frames to measure
+     */
+    public PerformanceOverlayView(Context context) {
+        super(context);
+        mWindow = ((Activity) context).getWindow();
+        setTypeface(Typeface.MONOSPACE);
+        setTextSize(12);
+        setTextColor(Color.WHITE);
+        setBackgroundColor(Color.argb(160, 0, 0, 0));
+        setPadding(8, 8, 8, 8);
+        setLayoutParams(new FrameLayout.LayoutParams(FrameLayout.LayoutParams.WRAP_CONTENT,
+                FrameLayout.LayoutParams.WRAP_CONTENT, Gravity.TOP | Gravity.START));
+        // Touches go through to the menus underneath
+        setClickable(false);
+        setFocusable(false);
+    }
+
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        PerformanceCounters.setEnabled(true);
+        mMetricsThread = new HandlerThread("FrameMetrics");
+        mMetricsThread.start();
+        mWindow.addOnFrameMetricsAvailableListener(mMetricsListener,
+                new Handler(mMetricsThread.getLooper()));
+        refresh();
+        Choreographer.getInstance().postFrameCallback(mFrameCallback);
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        Choreographer.getInstance().removeFrameCallback(mFrameCallback);
+        mWindow.removeOnFrameMetricsAvailableListener(mMetricsListener);
+        mMetricsThread.quitSafely();
+        mMetricsThread = null;
+        PerformanceCounters.setEnabled(false);
+        super.onDetachedFromWindow();
+    }
+
+    // Shows the latest counters
+    private void refresh() {
+        mText.setLength(0);
+        mText.append("frame        ")
+                .append(millis(PerformanceCounters.getLastFrameNanos())).append(" ms\n");
+        mText.append("input→hl     ")
+                .append(PerformanceCounters.getLastLatencyMillis()).append(" ms\n");
+        mText.append("hit test     ")
+                .append(micros(PerformanceCounters.getLastHitTestNanos())).append(" µs (mean ")
+                .append(micros(PerformanceCounters.getMeanHitTestNanos())).append(" µs of ")
+                .append(PerformanceCounters.getHitTests()).append(")\n");
+        mText.append("menu draw    ")
+                .append(micros(PerformanceCounters.getLastDrawNanos())).append(" µs\n");
+        mText.append("allocs       ")
+                .append(PerformanceCounters.getLastGestureAllocs()).append(" / gesture\n");
+        mText.append("label cache  ")
+                .append(LabelCache.getHits()).append(" hits, ")
+                .append(LabelCache.getMisses()).append(" misses");
+        setText(mText);
+    }
+
+    private static float millis(long nanos) {
+        return Math.round(nanos / 100000f) / 10f;
+    }
+
+    private static float micros(long nanos) {
+        return Math.round(nanos / 100f) / 10f;
+    }
+}
@@ -2,13 +2,17 @@ package cse340.menus.views;
 
 import android.content.Context;
 import android.graphics.Canvas;
+import android.graphics.Paint;
 import android.graphics.Path;
 import android.graphics.PointF;
+import android.view.MotionEvent;
+import android.view.View;
 import android.view.ViewGroup;
 
 import java.util.List;
 
 import cse340.menus.ExperimentTrial;
+import cse340.menus.MenuLayout;
 import cse340.menus.enums.State;
 
 public class PieMenuView extends MenuExperimentView {
@@ -16,12 +20,51 @@ public class PieMenuView extends MenuExperimentView {
     /** Class constant used to determine the size of the pie menu */
     private static final float RADIUS_RATIO = 0.347f;
 
+    /** How long the highlight takes to rotate from one wedge to the next */
+    private static final long HIGHLIGHT_ANIMATION_MILLIS = 60;
+
+    /** In marking mode, how long the finger has to rest before the pie is shown */
+    private static final long MARKING_DELAY_MILLIS = 300;
+
     /** Actual radius of the pie menu once determined by the display metrics */
     private int RADIUS;
 
     // Num of items in menu, created and stored for code clarity
     private int menuSize;
 
+    /**
+     * The highlighted wedge. It is drawn once into a hardware layer and then only rotated,
+     * so moving the highlight never re-runs onDraw for either view.
+     */
+    private HighlightView mHighlightView;
+
+    /** The arc each item's label is drawn along. They only depend on the layout. */
+    private Path[] mTextPaths;
+
+    /**
+     * Whether this is a marking menu: the pie is only shown once the finger rests, and until
+     * then a flick selects the item in its direction without anything being drawn.
+     */
+    private boolean mMarkingMode;
+
+    /** Whether the pie has been shown during the current marking menu selection */
+    private boolean mRevealed;
+
+    /** Classifies the stroke while a marking menu is hidden */
+    private StrokeClassifier mStroke;
+
+    /** Where the finger last came to rest while a marking menu is hidden */
+    private float mRestX, mRestY;
+
+    /** Shows a hidden marking menu with the stroke's item highlighted */
+    private final Runnable mReveal = () -> {
+        mRevealed = true;
+        int index = getCurrentIndex();
+        setCurrentIndex(-1);
+        updateModel(index);
+        setVisibility(VISIBLE);
+    };
+
     public PieMenuView(Context context, List<String> items) {
         super(context, items);
     }
@@ -47,6 +90,116 @@ public class PieMenuView extends MenuExperimentView {
         ));
 
         menuSize = getItems().size();
+
+        int angle = 360 / menuSize;
+        mTextPaths = new Path[menuSize];
+        for (int i = 0; i < menuSize; i++) {
+            mTextPaths[i] = new Path();
+            mTextPaths[i].addArc(
+                    TEXT_SIZE + strokeWidth, TEXT_SIZE + strokeWidth,
+                    2 * RADIUS - TEXT_SIZE + strokeWidth,
+                    2 * RADIUS - TEXT_SIZE + strokeWidth,
+                    i * angle - 90, angle
+            );
+        }
+
+        mStroke = new StrokeClassifier(menuSize, 90 * (menuSize + 2) / ((float) menuSize), MIN_DIST);
+
+        mHighlightView = new HighlightView(getContext());
+        mHighlightView.setAlpha(0);
+    }
+
+    /**
+     * The highlight lives in the parent's overlay so that it can be positioned and rotated
+     * independently of the (static) pie.
+     */
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        if (getParent() instanceof ViewGroup) {
+            int size = getLayoutParams().width;
+            int center = RADIUS + (int) getBorderPaint().getStrokeWidth();
+            ((ViewGroup) getParent()).getOverlay().add(mHighlightView);
+            mHighlightView.layout(0, 0, size, size);
+            mHighlightView.setPivotX(center);
+            mHighlightView.setPivotY(center);
+            syncHighlightPosition();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        removeCallbacks(mReveal);
+        if (getParent() instanceof ViewGroup) {
+            ((ViewGroup) getParent()).getOverlay().remove(mHighlightView);
+        }
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    public void setVisibility(int visibility) {
+        super.setVisibility(visibility);
+        if (mHighlightView != null) {
+            mHighlightView.setVisibility(visibility);
+        }
+    }
+
+    /**
+     * Turn marking menu mode on or off. It applies from the next selection.
+     * @param markingMode true to only show the pie once the finger rests
+     */
+    public void setMarkingMode(boolean markingMode) {
+        mMarkingMode = markingMode;
+    }
+
+    public boolean isMarkingMode() {
+        return mMarkingMode;
+    }
+
+    // Whether a marking menu selection is in progress with the pie still hidden
+    private boolean isHidden() {
+        return mMarkingMode && mState == State.SELECTING && !mRevealed;
+    }
+
+    /**
+     * While a marking menu is hidden, feeds each sample to the stroke classifier and restarts
+     * the reveal delay whenever the finger moves on, before handling the event as usual.
+     *
+     * @param event Event for touch.
+     */
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (isHidden()) {
+            mStroke.add(event.getX(), event.getY());
+            float dx = event.getX() - mRestX;
+            float dy = event.getY() - mRestY;
+            if (dx * dx + dy * dy > MIN_DIST * MIN_DIST) {
+                mRestX = event.getX();
+                mRestY = event.getY();
+                removeCallbacks(mReveal);
+                postDelayed(mReveal, MARKING_DELAY_MILLIS);
+            }
+        }
+        return super.onTouchEvent(event);
+    }
+
+    @Override
+    public boolean openForAccessibility(float x, float y) {
+        if (!super.openForAccessibility(x, y)) {
+            return false;
+        }
+        if (mMarkingMode && !mRevealed) {
+            // There is no stroke to wait for, so a marking menu is shown straight away
+            removeCallbacks(mReveal);
+            mReveal.run();
+        }
+        return true;
+    }
+
+    // Keeps the overlay highlight on top of the pie after the pie has been moved
+    private void syncHighlightPosition() {
+        mHighlightView.setX(getX());
+        mHighlightView.setY(getY());
     }
 
     /**
@@ -59,13 +212,81 @@ public class PieMenuView extends MenuExperimentView {
         // Centers the view at the starting point
         setX(getX() - RADIUS);
         setY(getY() - RADIUS);
+        syncHighlightPosition();
         // let the parent handle other standard stuff
         super.startSelection(point);
+
+        if (mMarkingMode) {
+            // Stay hidden until the finger rests
+            mRevealed = false;
+            setVisibility(INVISIBLE);
+            mStroke.reset(RADIUS, RADIUS);
+            mRestX = RADIUS;
+            mRestY = RADIUS;
+            postDelayed(mReveal, MARKING_DELAY_MILLIS);
+        }
+    }
+
+    /**
+     * Records whether the item was selected without the pie being shown (an expert
+     * selection) before completing the selection as usual.
+     * @param menuItem the menu item that was selected by the user
+     * @param point The current position of the mouse
+     */
+    @Override
+    protected void endSelection(int menuItem, PointF point) {
+        removeCallbacks(mReveal);
+        if (experimentMode()) {
+            getTrial().setMarking(mMarkingMode);
+            getTrial().setExpertSelection(isHidden());
+        }
+        super.endSelection(menuItem, point);
+    }
+
+    /**
+     * Change the model of the menu. Unlike the other menus this does not invalidate. The
+     * highlight is animated through view properties: the animator still ticks on the UI
+     * thread's Choreographer, but each frame only updates the highlight's RenderNode
+     * properties, so its hardware layer is redrawn without running onDraw.
+     * @param menuItem the menu item that is currently selected by the user
+     */
+    @Override
+    protected void updateModel(int menuItem) {
+        if (menuItem == getCurrentIndex()) {
+            return;
+        }
+        int previous = getCurrentIndex();
+        setCurrentIndex(menuItem);
+        if (isHidden()) {
+            // Nothing is drawn until the pie is revealed
+            return;
+        }
+
+        if (menuItem == -1) {
+            mHighlightView.animate().cancel();
+            mHighlightView.setAlpha(0);
+            return;
+        }
+
+        float target = menuItem * (360 / menuSize);
+        if (previous == -1) {
+            // Nothing to animate from, so jump straight to the wedge
+            mHighlightView.animate().cancel();
+            mHighlightView.setRotation(target);
+            mHighlightView.setAlpha(1);
+        } else {
+            // Take the shortest way around the circle
+            float current = mHighlightView.getRotation();
+            float delta = ((target - current) % 360 + 540) % 360 - 180;
+            mHighlightView.animate()
+                    .rotation(current + delta)
+                    .setDuration(HIGHLIGHT_ANIMATION_MILLIS);
+        }
     }
 
     /**
      * Calculates the index of the menu item using the current finger position
-     * If the finger has moved less than MIN_DIST, return -1.
+     * If the finger is still in the dead zone, return -1.
      *
      * Pie Menus have infinite width, so you should not return -1 if the finger leaves the
      * confines of the menu.
@@ -77,6 +298,10 @@ public class PieMenuView extends MenuExperimentView {
      */
     @Override
     protected int essentialGeometry(PointF p) {
+        if (isHidden()) {
+            // A hidden marking menu has no edge, only directions
+            return mStroke.getSector();
+        }
         if (!invalidSelection(p.x, p.y)) {
             double angle = Math.toDegrees(Math.atan2(p.y - RADIUS, p.x - RADIUS));
             // Shifts angle to correspond with our menu's visual representation
@@ -89,6 +314,31 @@ public class PieMenuView extends MenuExperimentView {
         return -1;
     }
 
+    /**
+     * Describes the pie menu: menuSize sectors around the touch point.
+     *
+     * @return the current layout of the menu
+     */
+    @Override
+    public MenuLayout describeLayout() {
+        int[] items = new int[menuSize];
+        for (int i = 0; i < menuSize; i++) {
+            items[i] = getOriginalIndex(i);
+        }
+        return MenuLayout.sectors(items, RADIUS, RADIUS, RADIUS,
+                90 * (menuSize + 2) / ((float) menuSize), RADIUS, RADIUS,
+                getDeadZoneRadius(), getDeadZoneShape(), mDisplayMetrics.widthPixels,
+                mDisplayMetrics.heightPixels, mDisplayMetrics.density);
+    }
+
+    /**
+     * Labels are drawn along their wedge's arc, so they have the arc's length.
+     */
+    @Override
+    protected float getLabelWidth(int index) {
+        return (float) Math.toRadians(360 / menuSize) * (RADIUS - TEXT_SIZE);
+    }
+
     // Returns true if the given x, y coordinates are outside of
     // the circle. False otherwise.
     // Made for code clarity
@@ -96,7 +346,7 @@ public class PieMenuView extends MenuExperimentView {
         x = x - RADIUS;
         y = y - RADIUS;
         return
-                (x * x + y * y < MIN_DIST * MIN_DIST) ||
+                inDeadZone(x, y) ||
                 (x * x + y * y > RADIUS * RADIUS)
         ;
     }
@@ -118,36 +368,39 @@ public class PieMenuView extends MenuExperimentView {
                 RADIUS + strokeWidth, RADIUS + strokeWidth,
                 RADIUS - 2 * TEXT_SIZE, getBorderPaint()
         );
-        int angle = 360 / menuSize;
-        int[] edges = {
-                TEXT_SIZE + strokeWidth, TEXT_SIZE + strokeWidth,
-                2 * RADIUS - TEXT_SIZE + strokeWidth,
-                2 * RADIUS - TEXT_SIZE + strokeWidth
-        };
+        Paint textBrush = getTextPaint();
+        float textSize = textBrush.getTextSize();
         for (int i = 0; i < menuSize; i++) {
-            drawMenuText(canvas, getItems().get(i), i, edges, angle);
+            LabelCache.Label label = getLabel(i);
+            textBrush.setTextSize(label.textSize);
+            canvas.drawTextOnPath(label.display, mTextPaths[i], 0, 0, textBrush);
+        }
+        textBrush.setTextSize(textSize);
+        // The highlighted menu option is drawn by mHighlightView
+    }
+
+    /**
+     * Draws the wedge for item 0 once. PieMenuView rotates it about the pie's center to
+     * highlight the other items.
+     */
+    private class HighlightView extends View {
+
+        HighlightView(Context context) {
+            super(context);
+            setLayerType(LAYER_TYPE_HARDWARE, null);
         }
-        // Draws highlighted menu option
-        if (getCurrentIndex() != -1) {
+
+        @Override
+        protected void onDraw(Canvas canvas) {
+            int strokeWidth = (int) getBorderPaint().getStrokeWidth();
+            Paint brush = getHighlightPaint();
             canvas.drawArc(
-                    edges[0], edges[1], edges[2], edges[3],
-                    getCurrentIndex() * angle -
-                            90 * (menuSize + 2) / ((float) menuSize),
-                    angle,true, getHighlightPaint()
+                    TEXT_SIZE + strokeWidth, TEXT_SIZE + strokeWidth,
+                    2 * RADIUS - TEXT_SIZE + strokeWidth,
+                    2 * RADIUS - TEXT_SIZE + strokeWidth,
+                    -90 * (menuSize + 2) / ((float) menuSize),
+                    360 / menuSize, true, brush
             );
         }
     }
-
-    // Draws the passed text on the circle specified with edges
-    // for the given menu index it has occupying an angle slice
-    private void drawMenuText(Canvas canvas, String text,
-                              int index, int[] edges, int angle) {
-        Path path = new Path();
-        path.addArc(
-                edges[0], edges[1], edges[2], edges[3],
-                index * angle - 90, angle
-        );
-        canvas.drawTextOnPath(text, path, 0, 0, getTextPaint());
-    }
-
 }
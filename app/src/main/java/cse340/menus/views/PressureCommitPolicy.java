@@ -0,0 +1,39 @@
+package cse340.menus.views;
+
+import cse340.menus.MenuLayout;
+import cse340.menus.enums.CommitType;
+
+/**
+ * Commits the highlighted item when the finger presses PRESSURE_RATIO times harder than it
+ * did when it came down. The threshold is relative because devices report pressure on
+ * different scales, many of them between 0 and 1. Devices without pressure sensing report a
+ * constant pressure, which never commits.
+ */
+class PressureCommitPolicy implements CommitPolicy {
+
+    /** How much harder than at touch down the finger has to press to commit */
+    private static final float PRESSURE_RATIO = 1.2f;
+
+    /** The pressure that commits, or infinity if the touch down reported no pressure */
+    private float mThreshold;
+
+    @Override
+    public void start(MenuLayout layout, float pressure, long timeMillis) {
+        mThreshold = pressure > 0 ? pressure * PRESSURE_RATIO : Float.POSITIVE_INFINITY;
+    }
+
+    @Override
+    public int onMove(int item, float x, float y, float pressure, long timeMillis) {
+        return item >= 0 && pressure >= mThreshold ? item : CONTINUE;
+    }
+
+    @Override
+    public long getRecheckMillis(long timeMillis) {
+        return 0;
+    }
+
+    @Override
+    public CommitType getType() {
+        return CommitType.PRESSURE;
+    }
+}
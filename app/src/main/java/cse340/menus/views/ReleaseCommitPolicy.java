@@ -0,0 +1,29 @@
+package cse340.menus.views;
+
+import cse340.menus.MenuLayout;
+import cse340.menus.enums.CommitType;
+
+/**
+ * Only commits when the finger is lifted, like the menus always have.
+ */
+class ReleaseCommitPolicy implements CommitPolicy {
+
+    @Override
+    public void start(MenuLayout layout, float pressure, long timeMillis) {
+    }
+
+    @Override
+    public int onMove(int item, float x, float y, float pressure, long timeMillis) {
+        return CONTINUE;
+    }
+
+    @Override
+    public long getRecheckMillis(long timeMillis) {
+        return 0;
+    }
+
+    @Override
+    public CommitType getType() {
+        return CommitType.RELEASE;
+    }
+}
@@ -0,0 +1,90 @@
+package cse340.menus.views;
+
+/**
+ * Classifies a stroke into one of a pie's sectors by its direction, one sample at a time, so
+ * a marking menu can select an item without the menu ever being shown.
+ *
+ * The direction is measured from where the stroke started to the latest sample, using the
+ * same angles as PieMenuView. Once a sector is chosen the stroke has to go HYSTERESIS_DEGREES
+ * past its edge before another one is, so a stroke along a boundary doesn't flicker between
+ * the two sectors. Each sample takes constant time and nothing is allocated.
+ */
+class StrokeClassifier {
+
+    /** How far past a sector's edge a stroke has to go to leave it */
+    private static final float HYSTERESIS_DEGREES = 5;
+
+    /** The number of sectors, and the angle added so sector 0 starts where the pie's does */
+    private final int mSectors;
+    private final float mAngleOffset;
+
+    /** Strokes shorter than this don't select anything */
+    private final float mMinLength;
+
+    /** Where the stroke started */
+    private float mStartX, mStartY;
+
+    /** The sector the stroke is in, or -1 */
+    private int mSector = -1;
+
+    /**
+     * Constructor
+     *
+     * @param sectors The number of sectors
+     * @param angleOffset Degrees added to the stroke's angle (0 is east, clockwise)
+     * @param minLength How long a stroke has to be to select a sector
+     */
+    StrokeClassifier(int sectors, float angleOffset, float minLength) {
+        mSectors = sectors;
+        mAngleOffset = angleOffset;
+        mMinLength = minLength;
+    }
+
+    /**
+     * Starts a new stroke.
+     * @param x Where it starts
+     * @param y Where it starts
+     */
+    void reset(float x, float y) {
+        mStartX = x;
+        mStartY = y;
+        mSector = -1;
+    }
+
+    /**
+     * Adds the next sample of the stroke.
+     * @param x The sample's position
+     * @param y The sample's position
+     * @return the sector the stroke is now in, or -1 if it is still too short
+     */
+    int add(float x, float y) {
+        float dx = x - mStartX;
+        float dy = y - mStartY;
+        if (dx * dx + dy * dy < mMinLength * mMinLength) {
+            mSector = -1;
+            return mSector;
+        }
+
+        double angle = Math.toDegrees(Math.atan2(dy, dx)) + mAngleOffset;
+        angle = (angle % 360 + 360) % 360;
+        int sector = Math.min((int) (mSectors * angle / 360), mSectors - 1);
+
+        if (mSector != -1 && sector != mSector) {
+            // Stay in the current sector until the stroke is clearly out of it
+            double center = (mSector + 0.5) * 360 / mSectors;
+            double fromCenter = Math.abs(((angle - center) % 360 + 540) % 360 - 180);
+            if (fromCenter <= 180.0 / mSectors + HYSTERESIS_DEGREES) {
+                return mSector;
+            }
+        }
+        mSector = sector;
+        return mSector;
+    }
+
+    /**
+     * @return the sector the stroke is in, or -1
+     */
+    int getSector() {
+        return mSector;
+    }
+}